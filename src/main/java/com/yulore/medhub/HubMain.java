@@ -1,6 +1,8 @@
 package com.yulore.medhub;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.nacos.api.config.ConfigType;
+import com.alibaba.nacos.api.config.annotation.NacosConfigListener;
 import com.alibaba.nls.client.protocol.InputFormatEnum;
 import com.alibaba.nls.client.protocol.NlsClient;
 import com.alibaba.nls.client.protocol.OutputFormatEnum;
@@ -14,6 +16,7 @@ import com.aliyun.oss.model.OSSObject;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.mgnt.utils.StringUnicodeEncoderDecoder;
 import com.tencent.asrv2.AsrConstant;
 import com.tencent.asrv2.SpeechRecognizer;
@@ -27,11 +30,17 @@ import com.yulore.medhub.nls.*;
 import com.yulore.medhub.session.*;
 import com.yulore.medhub.stream.*;
 import com.yulore.medhub.stream.StreamCacheService;
+import com.yulore.medhub.vad.BargeInDetector;
+import com.yulore.medhub.vad.VADGate;
+import com.yulore.medhub.task.PCMView;
 import com.yulore.medhub.task.PlayPCMTask;
 import com.yulore.medhub.task.PlayStreamPCMTask;
+import com.yulore.medhub.task.PlayoutPolicy;
+import com.yulore.medhub.task.PlaybackPacer;
 import com.yulore.medhub.task.SampleInfo;
 import com.yulore.medhub.vo.*;
-import com.yulore.util.ByteArrayListInputStream;
+import com.yulore.util.AudioCodec;
+import com.yulore.util.ByteBufferUtil;
 import io.netty.util.NettyRuntime;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
@@ -41,14 +50,13 @@ import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.Yaml;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.*;
 import java.net.InetSocketAddress;
@@ -56,13 +64,20 @@ import java.net.URLDecoder;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
 @Slf4j
 @Component
 public class HubMain {
     public static final byte[] EMPTY_BYTES = new byte[0];
+
+    // tts/cosy synthesized & cached at this rate, converted by ResampleStreamTask for 8 kHz consumer
+    private static final int NATIVE_SAMPLE_RATE = 16000;
+
     @Value("${ws_server.host}")
     private String _ws_host;
 
@@ -88,6 +103,55 @@ public class HubMain {
     @Value("#{${nls.txasr}}")
     private Map<String,String> _all_txasr;
 
+    // first_idle or least_loaded
+    @Value("${nls.select_strategy:least_loaded}")
+    private String _select_strategy;
+
+    private AgentSelector _agentSelector;
+
+    private AgentHealth.Config _healthConfig;
+
+    // 首选 ASR provider 无可用 agent 或启动超时时, 切换到另一家 provider
+    @Value("${nls.failover.enable:true}")
+    private boolean _asr_failover_enable;
+
+    // 非最后一个 provider 的启动时延预算
+    @Value("${nls.failover.start_budget_ms:3000}")
+    private long _asr_start_budget_ms;
+
+    // 每个 asr agent 预先建立连接(未启动)的 transcriber 数量, 0 表示不启用
+    @Value("${nls.warm_pool.per_agent:0}")
+    private int _warm_pool_per_agent;
+
+    // 需小于服务端空闲超时(10s), 超过后回收并重建
+    @Value("${nls.warm_pool.max_idle_ms:8000}")
+    private long _warm_pool_max_idle_ms;
+
+    private ASRWarmPool _asrWarmPool;
+
+    // asr lease 最长持有时间, 超过后视为泄漏并回收
+    @Value("${nls.lease.asr_max_hold_ms:14400000}")
+    private long _lease_asr_max_hold_ms;
+
+    // tts/cosy lease 最长持有时间, 超过后视为泄漏并回收
+    @Value("${nls.lease.tts_max_hold_ms:300000}")
+    private long _lease_tts_max_hold_ms;
+
+    @Value("${nls.health.consecutive_failures:5}")
+    private int _health_consecutive_failures;
+
+    @Value("${nls.health.failure_ratio:0.5}")
+    private float _health_failure_ratio;
+
+    @Value("${nls.health.slow_start_ms:3000}")
+    private long _health_slow_start_ms;
+
+    @Value("${nls.health.open_duration_ms:30000}")
+    private long _health_open_duration_ms;
+
+    @Value("${nls.health.max_probes:1}")
+    private int _health_max_probes;
+
     @Value("${test.enable_delay}")
     private boolean _test_enable_delay;
 
@@ -103,6 +167,48 @@ public class HubMain {
     @Value("${session.check_idle_interval_ms}")
     private long _check_idle_interval_ms;
 
+    // 识别启动(TranscriptionStarted)前缓存的最大音频时长, 启动后补发
+    @Value("${session.pre_start_buffer_ms:1000}")
+    private int _pre_start_buffer_ms;
+
+    // 本地 vad 配置, 按会话类型区分, eg: "energy=300 zcr=250 hangover_ms=1200 comfort_interval_ms=200 preroll_ms=60"
+    // 为空时不启用, 所有音频帧均转发至 ASR
+    @Value("${session.vad.media:}")
+    private String _vad_media;
+
+    @Value("${session.vad.call:}")
+    private String _vad_call;
+
+    // 本地打断检测(cancel_on_speak), eg: "energy=500 zcr=250 min_speech_ms=20", 为空时仅依赖 ASR 的 SentenceBegin
+    @Value("${session.barge_in.call:}")
+    private String _barge_in_call;
+
+    // 将 20ms 音频帧合并为 coalesce_ms 的 packet 后发送至 ASR, 0 表示不合并
+    @Value("${session.coalesce_ms:0}")
+    private int _coalesce_ms;
+
+    @Value("${session.coalesce_max_hold_ms:100}")
+    private long _coalesce_max_hold_ms;
+
+    // 流式放音(tts)策略: 启动时突发发送 burst_ms 音频填充 FreeSWITCH jitter buffer,
+    // 缓存 min_buffer_ms 后才开始放音, 每次欠载(underrun)后重新缓存时长翻倍, 最长 max_buffer_ms
+    // 默认均为 0: 关闭, 与原有实时节奏一致, 按需开启 (eg: burst 200/min 100/max 1000)
+    @Value("${playback.burst_ms:0}")
+    private int _playback_burst_ms;
+
+    @Value("${playback.min_buffer_ms:0}")
+    private int _playback_min_buffer_ms;
+
+    @Value("${playback.max_buffer_ms:0}")
+    private int _playback_max_buffer_ms;
+
+    // rms 读流推送模式: OpenStream 携带 push_window 时, hub 主动推送顺序数据, 客户端以 FileCredit 归还窗口
+    @Value("${rms.push.max_window:1048576}")
+    private int _rms_push_max_window;
+
+    @Value("${rms.push.chunk:32768}")
+    private int _rms_push_chunk;
+
     @Value("${session.match_media}")
     private String _match_media;
 
@@ -115,12 +221,16 @@ public class HubMain {
     @Value("${session.match_preview}")
     private String _match_preview;
 
-    final List<ASRAgent> _asrAgents = new ArrayList<>();
-    final List<TTSAgent> _ttsAgents = new ArrayList<>();
-    final List<CosyAgent> _cosyAgents = new ArrayList<>();
-    final List<TxASRAgent> _txasrAgents = new ArrayList<>();
+    final List<ASRAgent> _asrAgents = new CopyOnWriteArrayList<>();
+    final List<TTSAgent> _ttsAgents = new CopyOnWriteArrayList<>();
+    final List<CosyAgent> _cosyAgents = new CopyOnWriteArrayList<>();
+    final List<TxASRAgent> _txasrAgents = new CopyOnWriteArrayList<>();
+
+    // "<type>:<name>" => config value of agent, to detect changes when reload
+    private final Map<String, String> _agentConfigs = new ConcurrentHashMap<>();
+    private final Map<String, NlsTokenService.Registration> _tokenRegistrations = new ConcurrentHashMap<>();
 
-    private ScheduledExecutorService _nlsAuthExecutor;
+    private ScheduledExecutorService _nlsReportExecutor;
     
     WebSocketServer _wsServer;
 
@@ -130,8 +240,20 @@ public class HubMain {
 
     private ExecutorService _sessionExecutor;
 
+    // per connection serial mailbox multiplexed on _sessionExecutor: commands of the same ws run in arrival order
+    private final Map<WebSocket, Executor> _mailboxes = new ConcurrentHashMap<>();
+
+    // vendor transcriber start()/stop() are blocking round trips, keep them off _sessionExecutor & ws threads
+    private ExecutorService _asrControlExecutor;
+
     private ScheduledExecutorService _scheduledExecutor;
 
+    // test_delay 延迟发送: 单线程按提交顺序执行, 保证同一连接的事件与(推送)数据帧不乱序
+    private ScheduledExecutorService _delayedSendExecutor;
+
+    // idle check may call script api (remote http) and start playback, keep it off _scheduledExecutor's light timers
+    private ScheduledExecutorService _idleCheckExecutor;
+
     @Value("${oss.endpoint}")
     private String _oss_endpoint;
 
@@ -165,6 +287,18 @@ public class HubMain {
     @Autowired
     private StreamCacheService _scsService;
 
+    @Autowired
+    private NlsTokenService _tokenService;
+
+    @Autowired
+    private NlsQuotaService _quotaService;
+
+    @Autowired
+    private AgentLeaseService _leaseService;
+
+    @Autowired
+    private PlaybackPacer _playbackPacer;
+
     @Resource
     private ScriptApi _scriptApi;
 
@@ -179,11 +313,22 @@ public class HubMain {
 
         _txClient = new SpeechClient(AsrConstant.DEFAULT_RT_REQ_URL);
 
-        initNlsAgents(_nlsClient);
+        _agentSelector = AgentSelector.of(_select_strategy);
+        log.info("nls agent select strategy: {} => {}", _select_strategy, _agentSelector);
+
+        initNlsAgents();
+
+        _asrWarmPool = new ASRWarmPool(()->_asrAgents, _leaseService, this::buildSpeechTranscriber,
+                _warm_pool_per_agent, _warm_pool_max_idle_ms, _lease_asr_max_hold_ms);
+        _asrWarmPool.start();
 
         _ossAccessExecutor = Executors.newFixedThreadPool(NettyRuntime.availableProcessors() * 2, new DefaultThreadFactory("ossAccessExecutor"));
         _sessionExecutor = Executors.newFixedThreadPool(NettyRuntime.availableProcessors() * 2, new DefaultThreadFactory("sessionExecutor"));
+        // 并发连接数已由 agent limit 约束, 使用 cached pool 避免慢速握手排队阻塞后续会话
+        _asrControlExecutor = Executors.newCachedThreadPool(new DefaultThreadFactory("asrControlExecutor"));
         _scheduledExecutor = Executors.newScheduledThreadPool(NettyRuntime.availableProcessors() * 2, new DefaultThreadFactory("scheduledExecutor"));
+        _delayedSendExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("delayedSendExecutor"));
+        _idleCheckExecutor = Executors.newScheduledThreadPool(NettyRuntime.availableProcessors() * 2, new DefaultThreadFactory("idleCheckExecutor"));
 
         _wsServer = new WebSocketServer(new InetSocketAddress(_ws_host, _ws_port), NettyRuntime.availableProcessors() * 2) {
                     @Override
@@ -193,18 +338,39 @@ public class HubMain {
                                 webSocket.getRemoteSocketAddress(),
                                 webSocket.getLocalSocketAddress(),
                                 clientHandshake.getResourceDescriptor());
+                        // mailbox lives from open to close, removed (and never re-created) in onClose
+                        _mailboxes.put(webSocket, MoreExecutors.newSequentialExecutor(_sessionExecutor));
+                        final AudioCodec codec = codecOf(clientHandshake);
+                        if (null == codec) {
+                            log.warn("unsupported codec: {}, close connection from {}",
+                                    clientHandshake.getResourceDescriptor(), webSocket.getRemoteSocketAddress());
+                            webSocket.close(1003, "unsupported codec");
+                            return;
+                        }
                         if (clientHandshake.getResourceDescriptor() != null && clientHandshake.getResourceDescriptor().startsWith(_match_media)) {
                             // init MediaSession attach with webSocket
                             final String sessionId = clientHandshake.getFieldValue("x-sessionid");
                             final MediaSession session = new MediaSession(sessionId, _test_enable_delay, _test_delay_ms,
                                     _test_enable_disconnect, _test_disconnect_probability, ()->webSocket.close(1006, "test_disconnect"));
+                            session.setPreStartBufferMs(_pre_start_buffer_ms);
+                            session.setVAD(VADGate.Config.parse(_vad_media, 8000));
+                            session.setCoalesce(_coalesce_ms, _coalesce_max_hold_ms, _scheduledExecutor);
+                            session.setCodec(codec);
                             webSocket.setAttachment(session);
-                            session.scheduleCheckIdle(_scheduledExecutor, _check_idle_interval_ms,
+                            session.scheduleCheckIdle(_idleCheckExecutor, _check_idle_interval_ms,
                                     ()->HubEventVO.<Void>sendEvent(webSocket, "CheckIdle", null));
-                            log.info("ws path match: {}, using ws as MediaSession {}", _match_media, sessionId);
+                            log.info("ws path match: {}, using ws as MediaSession {}, codec: {}", _match_media, sessionId, codec);
                         } else if (clientHandshake.getResourceDescriptor() != null && clientHandshake.getResourceDescriptor().startsWith(_match_call)) {
+                            if (!codec.supports(16000)) {
+                                // CallSession run 16 kHz asr & playback, G.711 is 8 kHz only
+                                log.warn("codec: {} can't carry 16 kHz CallSession, close connection from {}", codec, webSocket.getRemoteSocketAddress());
+                                webSocket.close(1003, "unsupported codec");
+                                return;
+                            }
                             // init CallSession attach with webSocket
-                            final CallSession session = new CallSession(_callApi, _scriptApi, ()->webSocket.close(1000, "hangup"), _oss_bucket, _oss_path, (ctx) -> {
+                            final CallSession session = new CallSession(_callApi, _scriptApi,
+                                    // hangup may be triggered on pacer thread (playback completed), close on call connection's own mailbox
+                                    ()->mailboxOf(webSocket).execute(()->webSocket.close(1000, "hangup")), _oss_bucket, _oss_path, (ctx) -> {
                                 final long startUploadInMs = System.currentTimeMillis();
                                 _ossAccessExecutor.submit(()->{
                                     _ossClient.putObject(ctx.bucketName, ctx.objectName, ctx.content);
@@ -212,18 +378,30 @@ public class HubMain {
                                             ctx.sessionId, ctx.bucketName, ctx.objectName, System.currentTimeMillis() - startUploadInMs);
                                 });
                             });
+                            session.setPreStartBufferMs(_pre_start_buffer_ms);
+                            session.setVAD(VADGate.Config.parse(_vad_call, 16000));
+                            session.setBargeIn(BargeInDetector.Config.parse(_barge_in_call, 16000));
+                            session.setCoalesce(_coalesce_ms, _coalesce_max_hold_ms, _scheduledExecutor);
+                            session.setCodec(codec);
                             webSocket.setAttachment(session);
-                            session.scheduleCheckIdle(_scheduledExecutor, _check_idle_interval_ms, session::checkIdle);
+                            session.scheduleCheckIdle(_idleCheckExecutor, _check_idle_interval_ms, session::checkIdle);
 
-                            log.info("ws path match: {}, using ws as CallSession", _match_call);
+                            log.info("ws path match: {}, using ws as CallSession, codec: {}", _match_call, codec);
                         } else if (clientHandshake.getResourceDescriptor() != null && clientHandshake.getResourceDescriptor().startsWith(_match_playback)) {
+                            if (!codec.supports(16000)) {
+                                // playback of CallSession is 16 kHz, G.711 is 8 kHz only
+                                log.warn("codec: {} can't carry 16 kHz PlaybackSession, close connection from {}", codec, webSocket.getRemoteSocketAddress());
+                                webSocket.close(1003, "unsupported codec");
+                                return;
+                            }
                             // init PlaybackSession attach with webSocket
                             final String path = clientHandshake.getResourceDescriptor();
                             final int varsBegin = path.indexOf('?');
                             final String sessionId = varsBegin > 0 ? VarsUtil.extractValue(path.substring(varsBegin + 1), "sessionId") : "unknown";
                             final PlaybackSession playbackSession = new PlaybackSession(sessionId);
+                            playbackSession.setCodec(codec);
                             webSocket.setAttachment(playbackSession);
-                            log.info("ws path match: {}, using ws as PlaybackSession: [{}]", _match_playback, playbackSession.sessionId());
+                            log.info("ws path match: {}, using ws as PlaybackSession: [{}], codec: {}", _match_playback, playbackSession.sessionId(), codec);
                             final CallSession callSession = CallSession.findBy(sessionId);
                             if (callSession == null) {
                                 log.info("can't find callSession by sessionId: {}, ignore", sessionId);
@@ -246,6 +424,8 @@ public class HubMain {
 
                     @Override
                     public void onClose(final WebSocket webSocket, final int code, final String reason, final boolean remote) {
+                        // queued tasks still run on removed mailbox
+                        final Executor mailbox = _mailboxes.remove(webSocket);
                         final Object attachment = webSocket.getAttachment();
                         if (attachment instanceof MediaSession session) {
                             stopAndCloseTranscriber(webSocket);
@@ -260,7 +440,12 @@ public class HubMain {
                                     _currentWSConnection.decrementAndGet(),
                                     webSocket.getRemoteSocketAddress(), code, reason, session.sessionId());
                         } else if (attachment instanceof StreamSession session) {
-                            session.close();
+                            // close (upload for write mode) after pending FileWrite commands
+                            if (null != mailbox) {
+                                mailbox.execute(session::close);
+                            } else {
+                                session.close();
+                            }
                             log.info("wscount/{}: closed {} with exit code {} additional info: {}, StreamSession-id: {}",
                                     _currentWSConnection.decrementAndGet(),
                                     webSocket.getRemoteSocketAddress(), code, reason, session.sessionId());
@@ -289,7 +474,7 @@ public class HubMain {
                             handleASRData(bytes, session);
                             return;
                         } else if (attachment instanceof StreamSession session) {
-                            _sessionExecutor.submit(()-> handleFileWriteCommand(bytes, session, webSocket));
+                            mailboxOf(webSocket).execute(()-> handleFileWriteCommand(bytes, session, webSocket));
                             return;
                         }
                         log.error("onMessage(Binary): {} without any Session, ignore", webSocket.getRemoteSocketAddress());
@@ -315,160 +500,282 @@ public class HubMain {
         // interval = 20 ms
         int interval = 20;
         log.info("playbackOn: {} => sample rate: {}/interval: {}/channels: {}", path, 16000, interval, 1);
+        final SampleInfo sampleInfo = new SampleInfo(16000, interval, 16, 1);
+        // reused by every frame of this playback, ws send() copy it synchronously
+        final ByteBuffer wire = playbackSession.codec() != AudioCodec.L16
+                ? ByteBuffer.allocate(sampleInfo.bytesPerInterval() / 2) : null;
         final PlayStreamPCMTask task = new PlayStreamPCMTask(
                 path,
-                _scheduledExecutor,
-                new SampleInfo(16000, interval, 16, 1),
+                _playbackPacer,
+                sampleInfo,
+                new PlayoutPolicy(_playback_burst_ms, _playback_min_buffer_ms, _playback_max_buffer_ms),
                 callSession::notifyPlaybackSendStart,
                 callSession::notifyPlaybackSendStop,
-                (bytes) -> {
-                    webSocket.send(bytes);
-                    callSession.notifyPlaybackSendData(bytes);
+                (frame) -> {
+                    // record L16 (copy) before send, ws send consume frame's position
+                    callSession.notifyPlaybackSendData(frame);
+                    webSocket.send(playbackSession.codec().encode(frame, wire));
                 },
                 (_task) -> {
                     log.info("PlayStreamPCMTask {} stopped with completed: {}", _task, _task.isCompleted());
+                    // may run on pacer thread when playback completed, hangup queued on call connection's mailbox by callSession
                     callSession.notifyPlaybackStop(_task);
                     playbackSession.notifyPlaybackStop(_task);
                 }
         );
         final BuildStreamTask bst = getTaskOf(path, true, 16000);
         if (bst != null) {
-            playbackSession.attach(task);
+            playbackSession.attach(task, bst);
             callSession.notifyPlaybackStart(task);
             playbackSession.notifyPlaybackStart(task);
             bst.buildStream(task::appendData, (ignore)->task.appendCompleted());
         }
     }
 
-    private void initNlsAgents(final NlsClient client) {
-        _asrAgents.clear();
-        if (_all_asr != null) {
-            for (Map.Entry<String, String> entry : _all_asr.entrySet()) {
-                log.info("asr: {} / {}", entry.getKey(), entry.getValue());
-                final String[] values = entry.getValue().split(" ");
-                log.info("asr values detail: {}", Arrays.toString(values));
-                final ASRAgent agent = ASRAgent.parse(entry.getKey(), entry.getValue());
-                if (null == agent) {
-                    log.warn("asr init failed by: {}/{}", entry.getKey(), entry.getValue());
-                } else {
-                    agent.setClient(client);
-                    _asrAgents.add(agent);
-                }
-            }
+    private void initNlsAgents() {
+        _healthConfig = new AgentHealth.Config(
+                _health_consecutive_failures,
+                _health_failure_ratio,
+                AgentHealth.Config.DEFAULT.minCallsInWindow(),
+                AgentHealth.Config.DEFAULT.windowInMs(),
+                _health_slow_start_ms,
+                _health_open_duration_ms,
+                _health_max_probes,
+                AgentHealth.Config.DEFAULT.successToClose());
+        log.info("nls agent health config: {}", _healthConfig);
+
+        _nlsReportExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("nlsReportExecutor"));
+        reloadNlsAgents(_all_asr, _all_tts, _all_cosy, _all_txasr);
+        _nlsReportExecutor.scheduleAtFixedRate(()->log.info("nls agents health: {}, leases active: {}, leaked: {}",
+                nlsAgentsHealth(), _leaseService.activeCount(), _leaseService.leakedCount()), 30, 30, TimeUnit.SECONDS);
+        _nlsReportExecutor.scheduleAtFixedRate(()->log.info("asr {}", _asrWarmPool), 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * nls.asr/nls.tts/nls.cosy/nls.txasr changed in nacos: add new agents & update limit immediately,
+     * and drain removed agents (no new session, existing sessions kept until closed)
+     */
+    @NacosConfigListener(dataId = "${NACOS_DATAID}", type = ConfigType.YAML)
+    public void onNacosConfigChanged(final String content) {
+        try {
+            final Map<String, Object> root = new Yaml().load(content);
+            reloadNlsAgents(agentConfigsOf(root, "nls.asr"),
+                    agentConfigsOf(root, "nls.tts"),
+                    agentConfigsOf(root, "nls.cosy"),
+                    agentConfigsOf(root, "nls.txasr"));
+        } catch (Exception ex) {
+            log.warn("reload nls agents failed, keep current agents, detail: {}", ex.toString());
         }
-        log.info("asr agent init, count:{}", _asrAgents.size());
-
-        if (_all_tts != null) {
-            for (Map.Entry<String, String> entry : _all_tts.entrySet()) {
-                log.info("tts: {} / {}", entry.getKey(), entry.getValue());
-                final String[] values = entry.getValue().split(" ");
-                log.info("tts values detail: {}", Arrays.toString(values));
-                final TTSAgent agent = TTSAgent.parse(entry.getKey(), entry.getValue());
-                if (null == agent) {
-                    log.warn("tts init failed by: {}/{}", entry.getKey(), entry.getValue());
-                } else {
-                    agent.setClient(client);
-                    _ttsAgents.add(agent);
-                }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> agentConfigsOf(final Map<String, Object> root, final String key) {
+        // support both flat key "nls.asr" and nested nls -> asr
+        Object value = root.get(key);
+        if (null == value) {
+            final String[] paths = key.split("\\.");
+            Object node = root;
+            for (String path : paths) {
+                node = node instanceof Map ? ((Map<String, Object>) node).get(path) : null;
             }
+            value = node;
         }
-        log.info("tts agent init, count:{}", _ttsAgents.size());
-
-        if (_all_cosy != null) {
-            for (Map.Entry<String, String> entry : _all_cosy.entrySet()) {
-                log.info("cosy: {} / {}", entry.getKey(), entry.getValue());
-                final String[] values = entry.getValue().split(" ");
-                log.info("cosy values detail: {}", Arrays.toString(values));
-                final CosyAgent agent = CosyAgent.parse(entry.getKey(), entry.getValue());
-                if (null == agent) {
-                    log.warn("cosy init failed by: {}/{}", entry.getKey(), entry.getValue());
-                } else {
-                    agent.setClient(client);
-                    _cosyAgents.add(agent);
+        if (null == value) {
+            return null;
+        }
+        if (value instanceof Map) {
+            // unquoted {...} parsed as yaml flow mapping
+            final Map<String, String> configs = new LinkedHashMap<>();
+            ((Map<Object, Object>) value).forEach((k, v) -> configs.put(String.valueOf(k), String.valueOf(v)));
+            return configs;
+        }
+        // same as @Value("#{${nls.asr}}")
+        return new SpelExpressionParser().parseExpression(value.toString()).getValue(Map.class);
+    }
+
+    private synchronized void reloadNlsAgents(final Map<String, String> asrConfigs,
+                                              final Map<String, String> ttsConfigs,
+                                              final Map<String, String> cosyConfigs,
+                                              final Map<String, String> txasrConfigs) {
+        reloadAgents("asr", asrConfigs, _asrAgents, ASRAgent::parse, agent -> {
+            agent.setClient(_nlsClient);
+            _tokenRegistrations.put("asr:" + agent.getName(), _tokenService.register(agent));
+        });
+        reloadAgents("tts", ttsConfigs, _ttsAgents, TTSAgent::parse, agent -> {
+            agent.setClient(_nlsClient);
+            _tokenRegistrations.put("tts:" + agent.getName(), _tokenService.register(agent));
+        });
+        reloadAgents("cosy", cosyConfigs, _cosyAgents, CosyAgent::parse, agent -> {
+            agent.setClient(_nlsClient);
+            _tokenRegistrations.put("cosy:" + agent.getName(), _tokenService.register(agent));
+        });
+        reloadAgents("txasr", txasrConfigs, _txasrAgents, TxASRAgent::parse, agent -> agent.setClient(_txClient));
+    }
+
+    private <T extends SelectableAgent> void reloadAgents(final String type,
+                                                          final Map<String, String> configs,
+                                                          final List<T> agents,
+                                                          final BiFunction<String, String, T> parser,
+                                                          final Consumer<T> initializer) {
+        if (null == configs) {
+            // 配置项缺失时, 保持当前 agents 不变
+            log.warn("{} agents config missing, skip reload", type);
+            return;
+        }
+        for (T agent : agents) {
+            final String key = type + ":" + agent.getName();
+            final String current = _agentConfigs.get(key);
+            final String updated = configs.get(agent.getName());
+            if (null == updated || !withoutLimit(updated).equals(withoutLimit(current))) {
+                // 账号被删除 或 账号信息(非 limit)变更: 排空旧 agent, 变更的账号随后以新 agent 加入
+                drainAgent(type, agent, agents);
+            } else if (!updated.equals(current)) {
+                final T parsed = parser.apply(agent.getName(), updated);
+                if (null == parsed) {
+                    log.warn("{} reload failed by: {}/{}, keep current", type, agent.getName(), updated);
+                    continue;
                 }
+                log.info("{} agent: {} limit {} => {}", type, agent.getName(), agent.getLimit(), parsed.getLimit());
+                agent.setLimit(parsed.getLimit());
+                _agentConfigs.put(key, updated);
             }
         }
-        log.info("cosy agent init, count:{}", _cosyAgents.size());
-
-        _txasrAgents.clear();
-        if (_all_txasr != null) {
-            for (Map.Entry<String, String> entry : _all_txasr.entrySet()) {
-                log.info("txasr: {} / {}", entry.getKey(), entry.getValue());
-                final String[] values = entry.getValue().split(" ");
-                log.info("txasr values detail: {}", Arrays.toString(values));
-                final TxASRAgent agent = TxASRAgent.parse(entry.getKey(), entry.getValue());
-                if (null == agent) {
-                    log.warn("txasr init failed by: {}/{}", entry.getKey(), entry.getValue());
-                } else {
-                    agent.setClient(_txClient);
-                    _txasrAgents.add(agent);
-                }
+        for (Map.Entry<String, String> entry : configs.entrySet()) {
+            if (agents.stream().anyMatch(agent -> agent.getName().equals(entry.getKey()))) {
+                continue;
             }
+            log.info("{}: {} / {}", type, entry.getKey(), entry.getValue());
+            final T agent = parser.apply(entry.getKey(), entry.getValue());
+            if (null == agent) {
+                log.warn("{} init failed by: {}/{}", type, entry.getKey(), entry.getValue());
+            } else {
+                initializer.accept(agent);
+                agent.get_health().configure(_healthConfig);
+                _agentConfigs.put(type + ":" + agent.getName(), entry.getValue());
+                agents.add(agent);
+                _quotaService.register(type + ":" + agent.getName(), agent);
+            }
+        }
+        log.info("{} agent init, count:{}", type, agents.size());
+    }
+
+    private static String withoutLimit(final String config) {
+        return null != config ? config.replaceAll("limit=\\S*", "").trim() : "";
+    }
+
+    private void drainAgent(final String type, final SelectableAgent agent, final List<? extends SelectableAgent> agents) {
+        final String key = type + ":" + agent.getName();
+        // 从列表中移除后不再被选中, 已建立的会话持有 agent 的 lease, 结束时照常释放
+        agents.removeIf(current -> current == agent);
+        _agentConfigs.remove(key);
+        final NlsTokenService.Registration registration = _tokenRegistrations.remove(key);
+        if (null != registration) {
+            registration.cancel();
+        }
+        log.info("{} agent: {} draining, remain sessions: {}", type, agent.getName(),
+                agent.get_connectingOrConnectedCount().get());
+        checkDrained(key, agent);
+    }
+
+    private void checkDrained(final String key, final SelectableAgent agent) {
+        if (agent.get_connectingOrConnectedCount().get() <= 0) {
+            _quotaService.unregister(key, agent);
+            log.info("{} agent drained", key);
+        } else {
+            _nlsReportExecutor.schedule(()->checkDrained(key, agent), 1, TimeUnit.SECONDS);
         }
-        log.info("txasr agent init, count:{}", _txasrAgents.size());
+    }
 
-        _nlsAuthExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("nlsAuthExecutor"));
-        _nlsAuthExecutor.scheduleAtFixedRate(this::checkAndUpdateNlsToken, 0, 10, TimeUnit.SECONDS);
+    /**
+     * @return current state of all nls agents, for monitoring
+     */
+    public Map<String, String> nlsAgentsHealth() {
+        final Map<String, String> health = new TreeMap<>();
+        final BiConsumer<String, SelectableAgent> collect = (type, agent) -> health.put(type + ":" + agent.getName(),
+                String.format("%d/%d(%s), latency: %.1fms, %s", agent.get_connectingOrConnectedCount().get(),
+                        agent.effectiveLimit(), agent.get_quota(), agent.latencyInMs(), agent.get_health()));
+        _asrAgents.forEach(agent -> collect.accept("asr", agent));
+        _ttsAgents.forEach(agent -> collect.accept("tts", agent));
+        _cosyAgents.forEach(agent -> collect.accept("cosy", agent));
+        _txasrAgents.forEach(agent -> collect.accept("txasr", agent));
+        return health;
     }
 
     private ASRAgent selectASRAgent() {
-        for (ASRAgent agent : _asrAgents) {
-            final ASRAgent selected = agent.checkAndSelectIfHasIdle();
-            if (null != selected) {
-                log.info("select asr({}): {}/{}", agent.getName(), agent.get_connectingOrConnectedCount().get(), agent.getLimit());
-                return selected;
-            }
+        final ASRAgent selected = _agentSelector.select(_asrAgents);
+        if (null != selected) {
+            log.info("select asr({}): {}/{}, latency: {}", selected.getName(),
+                    selected.get_connectingOrConnectedCount().get(), selected.effectiveLimit(), selected.get_latency());
+            return selected;
         }
         throw new RuntimeException("all asr agent has full");
     }
 
     private TTSAgent selectTTSAgent() {
-        for (TTSAgent agent : _ttsAgents) {
-            final TTSAgent selected = agent.checkAndSelectIfHasIdle();
-            if (null != selected) {
-                log.info("select tts({}): {}/{}", agent.getName(), agent.get_connectingOrConnectedCount().get(), agent.getLimit());
-                return selected;
-            }
+        final TTSAgent selected = _agentSelector.select(_ttsAgents);
+        if (null != selected) {
+            log.info("select tts({}): {}/{}, latency: {}", selected.getName(),
+                    selected.get_connectingOrConnectedCount().get(), selected.effectiveLimit(), selected.get_latency());
+            return selected;
         }
         throw new RuntimeException("all tts agent has full");
     }
 
     private CosyAgent selectCosyAgent() {
-        for (CosyAgent agent : _cosyAgents) {
-            final CosyAgent selected = agent.checkAndSelectIfHasIdle();
-            if (null != selected) {
-                log.info("select cosy({}): {}/{}", agent.getName(), agent.get_connectingOrConnectedCount().get(), agent.getLimit());
-                return selected;
-            }
+        final CosyAgent selected = _agentSelector.select(_cosyAgents);
+        if (null != selected) {
+            log.info("select cosy({}): {}/{}, latency: {}", selected.getName(),
+                    selected.get_connectingOrConnectedCount().get(), selected.effectiveLimit(), selected.get_latency());
+            return selected;
         }
         throw new RuntimeException("all cosy agent has full");
     }
 
     private TxASRAgent selectTxASRAgent() {
-        for (TxASRAgent agent : _txasrAgents) {
-            final TxASRAgent selected = agent.checkAndSelectIfHasIdle();
-            if (null != selected) {
-                log.info("select txasr({}): {}/{}", agent.getName(), agent.get_connectingOrConnectedCount().get(), agent.getLimit());
-                return selected;
-            }
+        final TxASRAgent selected = _agentSelector.select(_txasrAgents);
+        if (null != selected) {
+            log.info("select txasr({}): {}/{}, latency: {}", selected.getName(),
+                    selected.get_connectingOrConnectedCount().get(), selected.effectiveLimit(), selected.get_latency());
+            return selected;
         }
         throw new RuntimeException("all txasr agent has full");
     }
 
-    private void checkAndUpdateNlsToken() {
-        for (ASRAgent agent : _asrAgents) {
-            agent.checkAndUpdateAccessToken();
-        }
-        for (TTSAgent agent : _ttsAgents) {
-            agent.checkAndUpdateAccessToken();
+    private AgentLease<TTSAgent> leaseTTSAgent() {
+        // tts 合成完成前不依赖会话存活, 仅通过最长持有时间回收
+        return _leaseService.lease(selectTTSAgent(), "tts", ()->true, _lease_tts_max_hold_ms);
+    }
+
+    private AgentLease<CosyAgent> leaseCosyAgent() {
+        return _leaseService.lease(selectCosyAgent(), "cosy", ()->true, _lease_tts_max_hold_ms);
+    }
+
+    // codec negotiation: header x-codec first, then codec=xxx in uri vars, default L16
+    private static AudioCodec codecOf(final ClientHandshake clientHandshake) {
+        final String field = clientHandshake.getFieldValue("x-codec");
+        if (field != null && !field.isEmpty()) {
+            return AudioCodec.of(field);
         }
-        for (CosyAgent agent : _cosyAgents) {
-            agent.checkAndUpdateAccessToken();
+        final String path = clientHandshake.getResourceDescriptor();
+        final int varsBegin = path != null ? path.indexOf('?') : -1;
+        if (varsBegin > 0) {
+            // match whole parameter name, eg: not xcodec=
+            for (String kv : path.substring(varsBegin + 1).split("[&,]")) {
+                final int eq = kv.indexOf('=');
+                if (eq > 0 && kv.substring(0, eq).trim().equals("codec")) {
+                    return AudioCodec.of(kv.substring(eq + 1));
+                }
+            }
         }
+        return AudioCodec.L16;
     }
 
     private void handleASRData(final ByteBuffer bytes, final ASRSession session) {
-        if (session.transmit(bytes)) {
+        // Java-WebSocket allocate new payload buffer for each frame and never reuse it,
+        // so the frame can be shared read-only by ASR forwarder & recorder, without any copy
+        // G.711 frame decoded into L16 (new array, retained by pre-start buffer / vad pre-roll / vendor SDK),
+        // L16 frame passed as is
+        if (session.transmit(session.codec().decode(ByteBufferUtil.arrayOf(bytes)))) {
             // transmit success
             if ((session.transmitCount() % 50) == 0) {
                 log.debug("{}: transmit 50 times.", session.sessionId());
@@ -476,35 +783,44 @@ public class HubMain {
         }
     }
 
+    private Executor mailboxOf(final WebSocket webSocket) {
+        final Executor mailbox = _mailboxes.get(webSocket);
+        // connection closed (or not opened): drop late commands instead of creating a mailbox never removed
+        return null != mailbox ? mailbox : (task) -> log.info("{} closed, drop late task", webSocket.getRemoteSocketAddress());
+    }
+
     private void handleHubCommand(final HubCommandVO cmd, final WebSocket webSocket) {
+        final Executor mailbox = mailboxOf(webSocket);
         if ("StartTranscription".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handleStartTranscriptionCommand(cmd, webSocket));
+            _asrControlExecutor.submit(()-> handleStartTranscriptionCommand(cmd, webSocket));
         } else if ("StopTranscription".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handleStopTranscriptionCommand(cmd, webSocket));
+            handleStopTranscriptionCommand(cmd, webSocket);
         } else if ("Playback".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handlePlaybackCommand(cmd, webSocket));
+            mailbox.execute(()-> handlePlaybackCommand(cmd, webSocket));
         } else if ("PlayTTS".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handlePlayTTSCommand(cmd, webSocket));
+            mailbox.execute(()-> handlePlayTTSCommand(cmd, webSocket));
         } else if ("StopPlayback".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handleStopPlaybackCommand(cmd, webSocket));
+            mailbox.execute(()-> handleStopPlaybackCommand(cmd, webSocket));
         } else if ("PausePlayback".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handlePausePlaybackCommand(cmd, webSocket));
+            mailbox.execute(()-> handlePausePlaybackCommand(cmd, webSocket));
         } else if ("ResumePlayback".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handleResumePlaybackCommand(cmd, webSocket));
+            mailbox.execute(()-> handleResumePlaybackCommand(cmd, webSocket));
         } else if ("OpenStream".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handleOpenStreamCommand(cmd, webSocket));
+            mailbox.execute(()-> handleOpenStreamCommand(cmd, webSocket));
         } else if ("GetFileLen".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handleGetFileLenCommand(cmd, webSocket));
+            mailbox.execute(()-> handleGetFileLenCommand(cmd, webSocket));
         } else if ("FileSeek".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handleFileSeekCommand(cmd, webSocket));
+            mailbox.execute(()-> handleFileSeekCommand(cmd, webSocket));
         } else if ("FileRead".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handleFileReadCommand(cmd, webSocket));
+            mailbox.execute(()-> handleFileReadCommand(cmd, webSocket));
         } else if ("FileTell".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handleFileTellCommand(cmd, webSocket));
+            mailbox.execute(()-> handleFileTellCommand(cmd, webSocket));
+        } else if ("FileCredit".equals(cmd.getHeader().get("name"))) {
+            mailbox.execute(()-> handleFileCreditCommand(cmd, webSocket));
         } else if ("UserAnswer".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handleUserAnswerCommand(cmd, webSocket));
+            mailbox.execute(()-> handleUserAnswerCommand(cmd, webSocket));
         } else if ("Preview".equals(cmd.getHeader().get("name"))) {
-            _sessionExecutor.submit(()-> handlePreviewCommand(cmd, webSocket));
+            mailbox.execute(()-> handlePreviewCommand(cmd, webSocket));
         } else {
             log.warn("handleHubCommand: Unknown Command: {}", cmd);
         }
@@ -516,14 +832,16 @@ public class HubMain {
         log.info("previewOn: {} => sample rate: {}/interval: {}/channels: {}", path, 16000, interval, 1);
         final PlayStreamPCMTask task = new PlayStreamPCMTask(
                 path,
-                _scheduledExecutor,
+                _playbackPacer,
                 new SampleInfo(16000, interval, 16, 1),
+                new PlayoutPolicy(_playback_burst_ms, _playback_min_buffer_ms, _playback_max_buffer_ms),
                 (ignore)->{},
                 (ignore)->{},
                 webSocket::send,
                 (_task) -> {
                     log.info("previewOn PlayStreamPCMTask {} stopped with completed: {}", _task, _task.isCompleted());
-                    webSocket.close(1000, "close");
+                    // may run on pacer thread, keep ws close off it
+                    mailboxOf(webSocket).execute(()->webSocket.close(1000, "close"));
                 }
         );
         final BuildStreamTask bst = getTaskOf(path, true, 16000);
@@ -566,7 +884,7 @@ public class HubMain {
                     ctx.session, ctx.name, ctx.payload, System.currentTimeMillis() - ctx.start);
         };
         return delayInMs == 0 ? performSendEvent : (ctx) -> {
-            _scheduledExecutor.schedule(() -> performSendEvent.accept(ctx), delayInMs, TimeUnit.MILLISECONDS);
+            _delayedSendExecutor.schedule(() -> performSendEvent.accept(ctx), delayInMs, TimeUnit.MILLISECONDS);
         };
     }
 
@@ -578,7 +896,8 @@ public class HubMain {
                     ctx.session, size, System.currentTimeMillis() - ctx.start);
         };
         return delayInMs == 0 ? performSendData : (ctx) -> {
-            _scheduledExecutor.schedule(() -> performSendData.accept(ctx), delayInMs, TimeUnit.MILLISECONDS);
+            // same delay on single thread: sent in submit order
+            _delayedSendExecutor.schedule(() -> performSendData.accept(ctx), delayInMs, TimeUnit.MILLISECONDS);
         };
     }
 
@@ -619,11 +938,27 @@ public class HubMain {
                 return;
             }
 
+            // push_window: client's read-ahead buffer in bytes, enable push mode if present
+            final int pushWindow = Math.min(_rms_push_max_window, parseIntOr(cmd.getPayload().get("push_window"), 0));
+            final Object opened;
+            if (pushWindow > 0) {
+                final int requestedChunk = parseIntOr(cmd.getPayload().get("push_chunk"), _rms_push_chunk);
+                // invalid (<= 0) push_chunk fall back to default, then clamp to [1, window]
+                final int pushChunk = Math.max(1, Math.min(pushWindow, requestedChunk > 0 ? requestedChunk : _rms_push_chunk));
+                _ss.enablePush(pushWindow, pushChunk);
+                opened = new PayloadStreamOpened(pushWindow, pushChunk);
+                log.info("[{}]: open stream with push mode => window: {}/chunk: {}", sessionId, pushWindow, pushChunk);
+            } else {
+                opened = null;
+            }
             _ss.onDataChange((ss) -> {
-                ss.sendEvent(startInMs, "StreamOpened", null);
+                ss.sendEvent(startInMs, "StreamOpened", opened);
                 return true;
             });
-            bst.buildStream(_ss::appendData, (isOK) -> _ss.appendCompleted());
+            // stream data built on vendor/oss threads, append via mailbox so that StreamSession confined to it
+            final Executor mailbox = mailboxOf(webSocket);
+            bst.buildStream((bytes) -> mailbox.execute(() -> _ss.appendData(bytes)),
+                    (isOK) -> mailbox.execute(_ss::appendCompleted));
         } else {
             // write mode return StreamOpened event directly
             _ss.sendEvent(startInMs, "StreamOpened", null);
@@ -633,27 +968,33 @@ public class HubMain {
     private BuildStreamTask getTaskOf(final String path, final boolean removeWavHdr, final int sampleRate) {
         try {
             if (path.contains("type=cp")) {
-                return new CompositeStreamTask(path, (cvo) -> {
+                // composite stream is pcm of native rate, converted (and wav header of consumer rate added) for each consumer
+                return ResampleStreamTask.ofPcm(new CompositeStreamTask(path, (cvo) -> {
                     final BuildStreamTask bst = cvo2bst(cvo);
                     if (bst != null) {
                         return bst.key() != null ? _scsService.asCache(bst) : bst;
                     }
                     return null;
-                }, removeWavHdr);
+                }, true), NATIVE_SAMPLE_RATE, sampleRate, !removeWavHdr);
             } else if (path.contains("type=tts")) {
-                final BuildStreamTask bst = new TTSStreamTask(path, this::selectTTSAgent, (synthesizer) -> {
-                    synthesizer.setFormat(removeWavHdr ? OutputFormatEnum.PCM : OutputFormatEnum.WAV);
-                    synthesizer.setSampleRate(sampleRate);
+                // synthesize & cache once as pcm of native rate, converted for each consumer
+                final BuildStreamTask bst = new TTSStreamTask(path, this::leaseTTSAgent, (synthesizer) -> {
+                    synthesizer.setFormat(OutputFormatEnum.PCM);
+                    synthesizer.setSampleRate(NATIVE_SAMPLE_RATE);
                 });
-                return bst.key() != null ? _scsService.asCache(bst) : bst;
+                return ResampleStreamTask.ofPcm(bst.key() != null ? _scsService.asCache(bst) : bst,
+                        NATIVE_SAMPLE_RATE, sampleRate, !removeWavHdr);
             } else if (path.contains("type=cosy")) {
-                final BuildStreamTask bst = new CosyStreamTask(path, this::selectCosyAgent, (synthesizer) -> {
-                    synthesizer.setFormat(removeWavHdr ? OutputFormatEnum.PCM : OutputFormatEnum.WAV);
-                    synthesizer.setSampleRate(sampleRate);
+                final BuildStreamTask bst = new CosyStreamTask(path, this::leaseCosyAgent, (synthesizer) -> {
+                    synthesizer.setFormat(OutputFormatEnum.PCM);
+                    synthesizer.setSampleRate(NATIVE_SAMPLE_RATE);
                 });
-                return bst.key() != null ? _scsService.asCache(bst) : bst;
+                return ResampleStreamTask.ofPcm(bst.key() != null ? _scsService.asCache(bst) : bst,
+                        NATIVE_SAMPLE_RATE, sampleRate, !removeWavHdr);
             } else {
-                return _scsService.asCache(new OSSStreamTask(path, _ossClient, removeWavHdr));
+                // wav file cached as is, consumer read as wav file (with header) handle its rate itself
+                final BuildStreamTask bst = _scsService.asCache(new OSSStreamTask(path, _ossClient));
+                return removeWavHdr ? ResampleStreamTask.ofWav(bst, sampleRate) : bst;
             }
         } catch (Exception ex) {
             log.warn("getTaskOf failed: {}", ex.toString());
@@ -664,7 +1005,9 @@ public class HubMain {
     private BuildStreamTask cvo2bst(final CompositeVO cvo) {
         if (cvo.getBucket() != null && !cvo.getBucket().isEmpty() && cvo.getObject() != null && !cvo.getObject().isEmpty()) {
             log.info("support CVO => OSS Stream: {}", cvo);
-            return new OSSStreamTask("{bucket=" + cvo.getBucket() + "}" + cvo.getObject(), _ossClient, true);
+            // composite stream is pcm of native rate
+            return ResampleStreamTask.ofWav(_scsService.asCache(
+                    new OSSStreamTask("{bucket=" + cvo.getBucket() + "}" + cvo.getObject(), _ossClient)), NATIVE_SAMPLE_RATE);
         } else if (cvo.getType() != null && cvo.getType().equals("tts")) {
             log.info("support CVO => TTS Stream: {}", cvo);
             return genTtsStreamTask(cvo);
@@ -678,7 +1021,7 @@ public class HubMain {
     }
 
     private BuildStreamTask genCosyStreamTask(final CompositeVO cvo) {
-        return new CosyStreamTask(cvo2cosy(cvo), this::selectCosyAgent, (synthesizer) -> {
+        return new CosyStreamTask(cvo2cosy(cvo), this::leaseCosyAgent, (synthesizer) -> {
             //设置返回音频的编码格式
             synthesizer.setFormat(OutputFormatEnum.PCM);
             //设置返回音频的采样率。
@@ -687,7 +1030,7 @@ public class HubMain {
     }
 
     private BuildStreamTask genTtsStreamTask(final CompositeVO cvo) {
-        return new TTSStreamTask(cvo2tts(cvo), this::selectTTSAgent, (synthesizer) -> {
+        return new TTSStreamTask(cvo2tts(cvo), this::leaseTTSAgent, (synthesizer) -> {
             //设置返回音频的编码格式
             synthesizer.setFormat(OutputFormatEnum.PCM);
             //设置返回音频的采样率
@@ -761,6 +1104,29 @@ public class HubMain {
             pos = ss.seekFromStart(seek_from_start);
         }
         ss.sendEvent(startInMs,"FileSeekResult", new PayloadFileSeekResult(pos));
+        // push mode: seek interrupt pushing, data after FileSeekResult start from new pos
+        ss.push(startInMs);
+    }
+
+    private void handleFileCreditCommand(final HubCommandVO cmd, final WebSocket webSocket) {
+        final int bytes = parseIntOr(cmd.getPayload().get("bytes"), 0);
+        final StreamSession ss = webSocket.getAttachment();
+        if (ss == null || !ss.pushing()) {
+            log.warn("handleFileCreditCommand: credit {} bytes without push mode stream, ignore", bytes);
+            return;
+        }
+        ss.addCredit(bytes);
+    }
+
+    private static int parseIntOr(final String value, final int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
     }
 
     private void handleFileReadCommand(final HubCommandVO cmd, final WebSocket webSocket) {
@@ -772,6 +1138,11 @@ public class HubMain {
             webSocket.send(EMPTY_BYTES);
             return;
         }
+        if (ss.pushing()) {
+            // data frames of push mode stream are pushed data, a FileRead reply would be taken as pushed data (or eof)
+            log.warn("handleFileReadCommand: file read => count: {} on push mode stream, reject", count);
+            return;
+        }
         log.info("file read => count: {}/ss.length:{}/ss.tell:{}", count, ss.length(), ss.tell());
         /*
         mod_sndrms read .wav file's op seq:
@@ -807,40 +1178,20 @@ public class HubMain {
     }
 
     private static boolean readLaterOrNow(final long startInMs, final StreamSession ss, final int count4read) {
-        try {
-            ss.lock();
-            if (ss.needMoreData(count4read)) {
-                ss.onDataChange((ignore) -> readLaterOrNow(startInMs, ss, count4read));
-                log.info("need more data for read: {} bytes, read on append data.", count4read);
-                return false;
-            }
-        } finally {
-            ss.unlock();
+        if (ss.needMoreData(count4read)) {
+            ss.onDataChange((ignore) -> readLaterOrNow(startInMs, ss, count4read));
+            log.info("need more data for read: {} bytes, read on append data.", count4read);
+            return false;
         }
-        final int posBeforeRead = ss.tell();
-        try {
-            ss.lock();
-            final byte[] bytes4read = new byte[count4read];
-            final int readed = ss.genInputStream().read(bytes4read);
-            if (readed <= 0) {
-                log.info("file read => request read count: {}, no_more_data read", count4read);
-                ss.sendData(startInMs, ByteBuffer.wrap(EMPTY_BYTES));
-                return true;
-            }
-            // readed > 0
-            ss.seekFromStart(ss.tell() + readed);
-            if (readed == bytes4read.length) {
-                ss.sendData(startInMs, ByteBuffer.wrap(bytes4read));
-            } else {
-                ss.sendData(startInMs, ByteBuffer.wrap(bytes4read, 0, readed));
-            }
-            log.info("file read => request read count: {}, actual read bytes: {}", count4read, readed);
-        } catch (IOException ex) {
-            log.warn("file read => request read count: {}/length:{}/pos before read:{}, failed: {}",
-                    count4read, ss.length(), posBeforeRead, ex.toString());
-        } finally {
-            ss.unlock();
+        final ByteBuffer data = ss.read(count4read);
+        final int readed = data.remaining();
+        if (readed <= 0) {
+            log.info("file read => request read count: {}, no_more_data read", count4read);
+            ss.sendData(startInMs, ByteBuffer.wrap(EMPTY_BYTES));
+            return true;
         }
+        ss.sendData(startInMs, data);
+        log.info("file read => request read count: {}, actual read bytes: {}", count4read, readed);
         return true;
     }
 
@@ -876,9 +1227,8 @@ public class HubMain {
 
         final List<byte[]> bufs = new ArrayList<>();
         final long startInMs = System.currentTimeMillis();
-        final TTSAgent agent = selectTTSAgent();
         final AtomicInteger idx = new AtomicInteger(0);
-        final TTSTask task = new TTSTask(agent,
+        final TTSTask task = new TTSTask(leaseTTSAgent(),
                 (synthesizer)->synthesizer.setText(text),
                 (bytes) -> {
                     final byte[] bytesArray = new byte[bytes.remaining()];
@@ -889,10 +1239,11 @@ public class HubMain {
                 (response)->{
                     log.info("handlePlayTTSCommand: gen pcm stream cost={} ms", System.currentTimeMillis() - startInMs);
                     session.stopCurrentAndStartPlay(new PlayPCMTask(0, 0,
-                            _scheduledExecutor,
-                            new ByteArrayListInputStream(bufs),
+                            _playbackPacer,
+                            PCMView.ofPcm(bufs, 8000),
                             new SampleInfo(8000, 20, 16, 1),
                             webSocket,
+                            session.codec(),
                             session::stopCurrentIfMatch));
                 },
                 (response)-> log.warn("tts failed: {}", response));
@@ -963,20 +1314,23 @@ public class HubMain {
             try (final OSSObject ossObject = _ossClient.getObject(_oss_bucket, objectName)) {
                 final ByteArrayOutputStream os = new ByteArrayOutputStream((int) ossObject.getObjectMetadata().getContentLength());
                 ossObject.getObjectContent().transferTo(os);
-                final int id = session.addPlaybackStream(os.toByteArray());
-                final InputStream is = new ByteArrayInputStream(session.getPlaybackStream(id));
-                final AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(is);
-                final AudioFormat format = audioInputStream.getFormat();
+                // decode once on oss thread, pacer thread only slice the view
+                final PCMView wav = PCMView.ofWav(os.toByteArray());
+                // G.711 session is 8 kHz, convert at load instead of per frame
+                final PCMView view = session.codec().supports(wav.sampleRate())
+                        ? wav : wav.resampleTo(AudioCodec.G711_SAMPLE_RATE);
+                final int id = session.addPlaybackStream(view);
 
                 // interval = 20 ms
                 int interval = str_interval != null ? Integer.parseInt(str_interval) : 20;
 
-                log.info("playbackByFile: sample rate: {}/interval: {}/channels: {}", format.getSampleRate(), interval, format.getChannels());
+                log.info("playbackByFile: {}/interval: {}", view, interval);
                 session.stopCurrentAndStartPlay(new PlayPCMTask(id, 0,
-                        _scheduledExecutor,
-                        audioInputStream,
-                        new SampleInfo((int) format.getSampleRate(), interval, format.getSampleSizeInBits(), format.getChannels()),
+                        _playbackPacer,
+                        view,
+                        view.sampleInfo(interval),
                         webSocket,
+                        session.codec(),
                         session::stopCurrentIfMatch));
             } catch (IOException | UnsupportedAudioFileException ex) {
                 log.warn("playbackByFile: failed to load pcm: {}", ex.toString());
@@ -988,35 +1342,24 @@ public class HubMain {
     private void playbackById(final int id, final HubCommandVO cmd, final MediaSession session, final WebSocket webSocket) {
         final String str_interval = cmd.getPayload().get("interval");
         final int samples = getIntValueByName(cmd.getPayload(), "samples", 0);
-        try {
-            final byte[] bytes = session.getPlaybackStream(id);
-            if (bytes == null) {
-                log.warn("playbackById: failed to load bytes by id: {}", id);
-                return;
-            }
-            final InputStream is = new ByteArrayInputStream(bytes);
-            final AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(is);
-            final AudioFormat format = audioInputStream.getFormat();
-
-            // interval = 20 ms
-            int interval = str_interval != null ? Integer.parseInt(str_interval) : 20;
-
-            log.info("playbackById: sample rate: {}/interval: {}/channels: {}/samples: {}", format.getSampleRate(), interval, format.getChannels(), samples);
-            final SampleInfo sampleInfo = new SampleInfo((int) format.getSampleRate(), interval, format.getSampleSizeInBits(), format.getChannels());
-            if (samples > 0) {
-                audioInputStream.skip((long) samples * sampleInfo.sampleSizeInBytes());
-                log.info("playbackById: skip: {} samples", samples);
-            }
-            session.stopCurrentAndStartPlay(new PlayPCMTask(id, samples,
-                    _scheduledExecutor,
-                    audioInputStream,
-                    sampleInfo,
-                    webSocket,
-                    session::stopCurrentIfMatch));
-        } catch (IOException | UnsupportedAudioFileException ex) {
-            log.warn("playbackById: failed to load pcm: {}", ex.toString());
-            throw new RuntimeException(ex);
+        final PCMView view = session.getPlaybackStream(id);
+        if (view == null) {
+            log.warn("playbackById: failed to load pcm by id: {}", id);
+            return;
         }
+
+        // interval = 20 ms
+        int interval = str_interval != null ? Integer.parseInt(str_interval) : 20;
+
+        // seek by samples in PlayPCMTask.start(), O(1) on decoded view
+        log.info("playbackById: {}/interval: {}/samples: {}", view, interval, samples);
+        session.stopCurrentAndStartPlay(new PlayPCMTask(id, samples,
+                _playbackPacer,
+                view,
+                view.sampleInfo(interval),
+                webSocket,
+                session.codec(),
+                session::stopCurrentIfMatch));
     }
 
     private int getIntValueByName(final Map<String, String> map, final String name, final int defaultValue) {
@@ -1036,37 +1379,85 @@ public class HubMain {
             return;
         }
 
-        try {
-            session.lock();
-
-            if (!session.startTranscription()) {
-                log.warn("StartTranscription: {}'s Session startTranscription already, ignore", webSocket.getRemoteSocketAddress());
-                return;
-            }
+        if (!session.startTranscription()) {
+            log.warn("StartTranscription: {}'s Session startTranscription already, ignore", webSocket.getRemoteSocketAddress());
+            return;
+        }
 
-            if ("tx".equals(provider)) {
-                startWithTxasr(webSocket, session);
-            } else {
-                startWithAliasr(webSocket, session);
-            }
+        boolean started = false;
+        try {
+            started = startTranscription(webSocket, session, provider);
         } catch (Exception ex) {
             // TODO: close websocket?
             log.error("StartTranscription: failed: {}", ex.toString());
-            throw new RuntimeException(ex);
         } finally {
-            session.unlock();
+            if (!session.connectCompleted(started)) {
+                log.info("StartTranscription: {} not started or stopped while connecting, state: {}",
+                        session.sessionId(), session.transcriberState());
+            }
         }
     }
 
-    private void startWithTxasr(final WebSocket webSocket, final ASRSession session) throws Exception {
-        final long startConnectingInMs = System.currentTimeMillis();
-        final TxASRAgent agent = selectTxASRAgent();
+    /**
+     * provider-agnostic start: try client preferred provider first, then fallback to the other vendor
+     * when admission failed (all agents full or unhealthy) or start latency passed budget.
+     * both vendors' events are sent to client as the same TranscriptionStarted/SentenceBegin/SentenceEnd/
+     * TranscriptionResultChanged/TranscriptionCompleted hub events, so client won't notice the switch.
+     */
+    private boolean startTranscription(final WebSocket webSocket, final ASRSession session, final String provider) throws Exception {
+        final List<String> providers = new ArrayList<>("tx".equals(provider) ? List.of("tx", "ali") : List.of("ali", "tx"));
+        if (!_asr_failover_enable) {
+            providers.remove(1);
+        }
+        for (int idx = 0; idx < providers.size(); idx++) {
+            if (session.transcriberState() == ASRSession.TranscriberState.STOPPING) {
+                log.info("StartTranscription: {} stop requested while connecting, skip provider: {}", session.sessionId(), providers.get(idx));
+                return false;
+            }
+            final boolean isLast = idx == providers.size() - 1;
+            // 最后一个 provider 不受启动时延预算限制, 使用 SDK 默认超时
+            final long startTimeoutInMs = isLast ? 0 : _asr_start_budget_ms;
+            try {
+                final boolean started = "tx".equals(providers.get(idx))
+                        ? startWithTxasr(webSocket, session, startTimeoutInMs)
+                        : startWithAliasr(webSocket, session, startTimeoutInMs);
+                if (started) {
+                    if (idx > 0) {
+                        log.warn("StartTranscription: {} failover from {} to {}", session.sessionId(), providers.get(0), providers.get(idx));
+                    }
+                    return true;
+                }
+            } catch (Exception ex) {
+                if (isLast) {
+                    throw ex;
+                }
+                log.warn("StartTranscription: {} start with {} failed: {}, try next provider",
+                        session.sessionId(), providers.get(idx), ex.toString());
+            }
+        }
+        log.error("StartTranscription: {} start failed with all providers: {}", session.sessionId(), providers);
+        return false;
+    }
 
-        final SpeechRecognizer speechRecognizer = buildSpeechRecognizer(agent, buildRecognizerListener(session, webSocket, agent, session.sessionId(), startConnectingInMs));
+    private boolean startWithTxasr(final WebSocket webSocket, final ASRSession session, final long startTimeoutInMs) throws Exception {
+        final long startConnectingInMs = System.currentTimeMillis();
+        final int attempt = session.nextAttempt();
+        // set by onRecognitionStart of this attempt, SDK call it before start() returns
+        final AtomicBoolean recognitionStarted = new AtomicBoolean(false);
+        final AgentLease<TxASRAgent> lease = _leaseService.lease(selectTxASRAgent(), session.sessionId(),
+                webSocket::isOpen, _lease_asr_max_hold_ms);
+        final TxASRAgent agent = lease.agent();
+
+        final SpeechRecognizer speechRecognizer;
+        try {
+            speechRecognizer = buildSpeechRecognizer(agent, buildRecognizerListener(session, webSocket, lease, session.sessionId(), attempt, recognitionStarted, startConnectingInMs));
+        } catch (Exception ex) {
+            lease.close();
+            throw ex;
+        }
 
         session.setASR(()-> {
             try {
-                agent.decConnection();
                 try {
                     //通知服务端语音数据发送完毕，等待服务端处理完成。
                     long now = System.currentTimeMillis();
@@ -1078,22 +1469,32 @@ public class HubMain {
                 }
 
                 speechRecognizer.close();
-
-                if (session.isTranscriptionStarted()) {
-                    // 对于已经标记了 TranscriptionStarted 的会话, 将其使用的 ASR Account 已连接通道减少一
-                    agent.decConnected();
-                }
             } finally {
-                if (agent != null) {
-                    log.info("release txasr({}): {}/{}", agent.getName(), agent.get_connectingOrConnectedCount().get(), agent.getLimit());
-                }
+                // 释放占用的并发数, 对于已经标记了 TranscriptionStarted 的会话, 同时将已连接通道减少一
+                lease.close();
+                log.info("release txasr({}): {}/{}", agent.getName(), agent.get_connectingOrConnectedCount().get(), agent.getLimit());
             }
-        }, (bytes) -> speechRecognizer.write(bytes.array()));
+        }, speechRecognizer::write);
 
         try {
-            speechRecognizer.start();
+            if (startTimeoutInMs > 0) {
+                speechRecognizer.start(startTimeoutInMs);
+            } else {
+                speechRecognizer.start();
+            }
+            if (!recognitionStarted.get()) {
+                // start() also return when server reply failed (onFail recorded the failure), not started
+                log.warn("recognizer.start() returned without RecognitionStart, try next provider");
+                session.abortTranscriber();
+                return false;
+            }
+            return true;
         } catch (Exception ex) {
             log.error("recognizer.start() error: {}", ex.toString());
+            agent.recordFailure("txasr start failed: " + ex);
+            // 启动失败或超出启动时延预算: 关闭识别并释放占用的并发数
+            session.abortTranscriber();
+            return false;
         }
     }
 
@@ -1138,13 +1539,20 @@ public class HubMain {
 
     private SpeechRecognizerListener buildRecognizerListener(final ASRSession session,
                                                              final WebSocket webSocket,
-                                                             final TxASRAgent account,
+                                                             final AgentLease<TxASRAgent> lease,
                                                              final String sessionId,
+                                                             final int attempt,
+                                                             final AtomicBoolean started,
                                                              final long startConnectingInMs) {
+        final TxASRAgent account = lease.agent();
         // https://cloud.tencent.com/document/product/1093/48982
         return new SpeechRecognizerListener() {
             @Override
             public void onRecognitionStart(final SpeechRecognizerResponse response) {
+                if (isStaleAttempt(session, attempt, "onRecognitionStart")) {
+                    return;
+                }
+                started.set(true);
                 log.info("{} sessionId={},voice_id:{},{},cost={} ms", "onRecognitionStart",
                         sessionId,
                         response.getVoiceId(),
@@ -1152,7 +1560,8 @@ public class HubMain {
                         System.currentTimeMillis() - startConnectingInMs);
                 // notifyTranscriptionStarted(webSocket, account, response);
                 session.transcriptionStarted();
-                account.incConnected();
+                lease.markConnected();
+                account.recordLatency(System.currentTimeMillis() - startConnectingInMs);
                 try {
                     HubEventVO.sendEvent(webSocket, "TranscriptionStarted", (Void) null);
                 } catch (WebsocketNotConnectedException ex) {
@@ -1162,6 +1571,9 @@ public class HubMain {
 
             @Override
             public void onSentenceBegin(final SpeechRecognizerResponse response) {
+                if (isStaleAttempt(session, attempt, "onSentenceBegin")) {
+                    return;
+                }
                 log.info("{} sessionId={},voice_id:{},{}", "onSentenceBegin",
                         sessionId,
                         response.getVoiceId(),
@@ -1172,6 +1584,9 @@ public class HubMain {
 
             @Override
             public void onSentenceEnd(final SpeechRecognizerResponse response) {
+                if (isStaleAttempt(session, attempt, "onSentenceEnd")) {
+                    return;
+                }
                 log.info("{} sessionId={},voice_id:{},{}", "onSentenceEnd",
                         sessionId,
                         response.getVoiceId(),
@@ -1186,6 +1601,9 @@ public class HubMain {
 
             @Override
             public void onRecognitionResultChange(final SpeechRecognizerResponse response) {
+                if (isStaleAttempt(session, attempt, "onRecognitionResultChange")) {
+                    return;
+                }
                 log.info("{} sessionId={},voice_id:{},{}", "onRecognitionResultChange",
                         sessionId,
                         response.getVoiceId(),
@@ -1198,6 +1616,9 @@ public class HubMain {
 
             @Override
             public void onRecognitionComplete(final SpeechRecognizerResponse response) {
+                if (isStaleAttempt(session, attempt, "onRecognitionComplete")) {
+                    return;
+                }
                 log.info("{} sessionId={},voice_id:{},{}", "onRecognitionComplete",
                         sessionId,
                         response.getVoiceId(),
@@ -1207,30 +1628,49 @@ public class HubMain {
 
             @Override
             public void onFail(final SpeechRecognizerResponse response) {
+                if (isStaleAttempt(session, attempt, "onFail")) {
+                    return;
+                }
                 log.warn("{} sessionId={},voice_id:{},{}", "onFail",
                         sessionId,
                         response.getVoiceId(),
                         JSON.toJSONString(response));
+                account.recordFailure("txasr onFail: " + response.getCode() + "/" + response.getMessage());
                 session.notifySpeechTranscriberFail();
             }
 
             @Override
             public void onMessage(final SpeechRecognizerResponse response) {
+                if (isStaleAttempt(session, attempt, "onMessage")) {
+                    return;
+                }
                 log.info("{} voice_id:{},{}", "onMessage", response.getVoiceId(), JSON.toJSONString(response));
             }
         };
     }
 
-    private void startWithAliasr(final WebSocket webSocket, final ASRSession session) throws Exception {
+    private boolean startWithAliasr(final WebSocket webSocket, final ASRSession session, final long startTimeoutInMs) throws Exception {
         final long startConnectingInMs = System.currentTimeMillis();
-        final ASRAgent agent = selectASRAgent();
-
-        final SpeechTranscriber speechTranscriber = session.onSpeechTranscriberCreated(
-                buildSpeechTranscriber(agent, buildTranscriberListener(session, webSocket, agent, session.sessionId(), startConnectingInMs)));
+        // 优先使用预先建立连接的 transcriber, 由会话设置参数后启动
+        final int attempt = session.nextAttempt();
+        // set by onTranscriberStart of this attempt, SDK call it before start() returns
+        final AtomicBoolean transcriberStarted = new AtomicBoolean(false);
+        final ASRWarmPool.WarmTranscriber warm = _asrWarmPool.acquire();
+        final AgentLease<ASRAgent> lease = null != warm ? warm.lease()
+                : _leaseService.lease(selectASRAgent(), session.sessionId(), webSocket::isOpen, _lease_asr_max_hold_ms);
+        final ASRAgent agent = lease.agent();
+
+        final SpeechTranscriber speechTranscriber;
+        try {
+            speechTranscriber = session.onSpeechTranscriberCreated(null != warm ? warm.transcriber()
+                    : buildSpeechTranscriber(agent, buildTranscriberListener(session, webSocket, lease, session.sessionId(), attempt, transcriberStarted, startConnectingInMs)));
+        } catch (Exception ex) {
+            lease.close();
+            throw ex;
+        }
 
         session.setASR(()-> {
             try {
-                agent.decConnection();
                 try {
                     //通知服务端语音数据发送完毕，等待服务端处理完成。
                     long now = System.currentTimeMillis();
@@ -1242,22 +1682,38 @@ public class HubMain {
                 }
 
                 speechTranscriber.close();
-
-                if (session.isTranscriptionStarted()) {
-                    // 对于已经标记了 TranscriptionStarted 的会话, 将其使用的 ASR Account 已连接通道减少一
-                    agent.decConnected();
-                }
             } finally {
-                if (agent != null) {
-                    log.info("release asr({}): {}/{}", agent.getName(), agent.get_connectingOrConnectedCount().get(), agent.getLimit());
-                }
+                // 释放占用的并发数, 对于已经标记了 TranscriptionStarted 的会话, 同时将已连接通道减少一
+                lease.close();
+                log.info("release asr({}): {}/{}", agent.getName(), agent.get_connectingOrConnectedCount().get(), agent.getLimit());
             }
-        }, (bytes) -> speechTranscriber.send(bytes.array()));
+        }, speechTranscriber::send);
+
+        if (null != warm) {
+            log.info("{}: bind warm transcriber of asr({})", session.sessionId(), agent.getName());
+            warm.bind(session.sessionId(), webSocket::isOpen,
+                    buildTranscriberListener(session, webSocket, lease, session.sessionId(), attempt, transcriberStarted, startConnectingInMs));
+        }
 
         try {
-            speechTranscriber.start();
+            if (startTimeoutInMs > 0) {
+                speechTranscriber.start(startTimeoutInMs);
+            } else {
+                speechTranscriber.start();
+            }
+            if (!transcriberStarted.get()) {
+                // start() also return when server reply TaskFailed (onFail recorded the failure), not started
+                log.warn("speechTranscriber.start() returned without TranscriptionStarted, try next provider");
+                session.abortTranscriber();
+                return false;
+            }
+            return true;
         } catch (Exception ex) {
             log.error("speechTranscriber.start() error: {}", ex.toString());
+            agent.recordFailure("asr start failed: " + ex);
+            // 启动失败或超出启动时延预算: 关闭识别并释放占用的并发数
+            session.abortTranscriber();
+            return false;
         }
     }
 
@@ -1299,12 +1755,19 @@ public class HubMain {
 
     private SpeechTranscriberListener buildTranscriberListener(final ASRSession session,
                                                                final WebSocket webSocket,
-                                                               final ASRAgent account,
+                                                               final AgentLease<ASRAgent> lease,
                                                                final String sessionId,
+                                                               final int attempt,
+                                                               final AtomicBoolean started,
                                                                final long startConnectingInMs) {
+        final ASRAgent account = lease.agent();
         return new SpeechTranscriberListener() {
             @Override
             public void onTranscriberStart(final SpeechTranscriberResponse response) {
+                if (isStaleAttempt(session, attempt, "onTranscriberStart")) {
+                    return;
+                }
+                started.set(true);
                 //task_id是调用方和服务端通信的唯一标识，遇到问题时，需要提供此task_id。
                 log.info("onTranscriberStart: sessionId={}, task_id={}, name={}, status={}, cost={} ms",
                         sessionId,
@@ -1312,11 +1775,15 @@ public class HubMain {
                         response.getName(),
                         response.getStatus(),
                         System.currentTimeMillis() - startConnectingInMs);
-                notifyTranscriptionStarted(webSocket, account, response);
+                account.recordLatency(System.currentTimeMillis() - startConnectingInMs);
+                notifyTranscriptionStarted(webSocket, lease, response);
             }
 
             @Override
             public void onSentenceBegin(final SpeechTranscriberResponse response) {
+                if (isStaleAttempt(session, attempt, "onSentenceBegin")) {
+                    return;
+                }
                 log.info("onSentenceBegin: sessionId={}, task_id={}, name={}, status={}",
                         sessionId, response.getTaskId(), response.getName(), response.getStatus());
                 notifySentenceBegin(webSocket,
@@ -1325,6 +1792,9 @@ public class HubMain {
 
             @Override
             public void onSentenceEnd(final SpeechTranscriberResponse response) {
+                if (isStaleAttempt(session, attempt, "onSentenceEnd")) {
+                    return;
+                }
                 log.info("onSentenceEnd: sessionId={}, task_id={}, name={}, status={}, index={}, result={}, confidence={}, begin_time={}, time={}",
                         sessionId,
                         response.getTaskId(),
@@ -1345,6 +1815,9 @@ public class HubMain {
 
             @Override
             public void onTranscriptionResultChange(final SpeechTranscriberResponse response) {
+                if (isStaleAttempt(session, attempt, "onTranscriptionResultChange")) {
+                    return;
+                }
                 log.info("onTranscriptionResultChange: sessionId={}, task_id={}, name={}, status={}, index={}, result={}, time={}",
                         sessionId,
                         response.getTaskId(),
@@ -1361,6 +1834,9 @@ public class HubMain {
 
             @Override
             public void onTranscriptionComplete(final SpeechTranscriberResponse response) {
+                if (isStaleAttempt(session, attempt, "onTranscriptionComplete")) {
+                    return;
+                }
                 log.info("onTranscriptionComplete: sessionId={}, task_id={}, name={}, status={}",
                         sessionId,
                         response.getTaskId(),
@@ -1371,20 +1847,36 @@ public class HubMain {
 
             @Override
             public void onFail(final SpeechTranscriberResponse response) {
+                if (isStaleAttempt(session, attempt, "onFail")) {
+                    return;
+                }
                 log.warn("onFail: sessionId={}, task_id={}, status={}, status_text={}",
                         sessionId,
                         response.getTaskId(),
                         response.getStatus(),
                         response.getStatusText());
+                account.recordFailure("asr onFail: " + response.getStatus() + "/" + response.getStatusText());
                 session.notifySpeechTranscriberFail();
             }
         };
     }
 
-    private void notifyTranscriptionStarted(final WebSocket webSocket, final ASRAgent account, final SpeechTranscriberResponse response) {
+    /**
+     * callback of transcriber abandoned by failover (start failed or timeout), drop it so that it won't
+     *  affect the session now served by next attempt
+     */
+    private static boolean isStaleAttempt(final ASRSession session, final int attempt, final String callback) {
+        if (session.isCurrentAttempt(attempt)) {
+            return false;
+        }
+        log.info("{}: drop {} of abandoned attempt: {}", session.sessionId(), callback, attempt);
+        return true;
+    }
+
+    private void notifyTranscriptionStarted(final WebSocket webSocket, final AgentLease<ASRAgent> lease, final SpeechTranscriberResponse response) {
         final ASRSession session = webSocket.getAttachment();
         session.transcriptionStarted();
-        account.incConnected();
+        lease.markConnected();
         try {
             HubEventVO.sendEvent(webSocket, "TranscriptionStarted", (Void) null);
         } catch (WebsocketNotConnectedException ex) {
@@ -1432,18 +1924,18 @@ public class HubMain {
     }
 
     private void handleStopTranscriptionCommand(final HubCommandVO cmd, final WebSocket webSocket) {
-        stopAndCloseTranscriber(webSocket);
-        webSocket.close();
+        // close ws after transcriber stopped, so that final results (TranscriptionCompleted) can be sent
+        stopAndCloseTranscriber(webSocket).whenComplete((ignore, ex) -> webSocket.close());
     }
 
-    private static void stopAndCloseTranscriber(final WebSocket webSocket) {
+    private CompletableFuture<Void> stopAndCloseTranscriber(final WebSocket webSocket) {
         final ASRSession session = webSocket.getAttachment();
         if (session == null) {
             log.error("stopAndCloseTranscriber: {} without ASRSession, abort", webSocket.getRemoteSocketAddress());
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        session.stopAndCloseTranscriber();
+        return session.stopAndCloseTranscriber(_asrControlExecutor);
     }
 
     @PreDestroy
@@ -1452,9 +1944,13 @@ public class HubMain {
         _nlsClient.shutdown();
         _txClient.shutdown();
 
-        _nlsAuthExecutor.shutdownNow();
+        _asrWarmPool.stop();
+        _nlsReportExecutor.shutdownNow();
         _sessionExecutor.shutdownNow();
+        _asrControlExecutor.shutdownNow();
         _scheduledExecutor.shutdownNow();
+        _delayedSendExecutor.shutdownNow();
+        _idleCheckExecutor.shutdownNow();
         _ossAccessExecutor.shutdownNow();
 
         log.info("ASR-Hub: shutdown");
@@ -0,0 +1,277 @@
+package com.yulore.medhub.nls;
+
+import com.alibaba.nls.client.protocol.asr.SpeechTranscriber;
+import com.alibaba.nls.client.protocol.asr.SpeechTranscriberListener;
+import com.alibaba.nls.client.protocol.asr.SpeechTranscriberResponse;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * per-agent pool of pre-connected SpeechTranscriber (token & connection ready, not started):
+ *  keep up to targetPerAgent warm transcribers for each asr agent (each occupy one slot of agent),
+ *  new session bind to a warm transcriber, apply its own settings (eg: sample rate) then start it,
+ *  so skip connect & auth round trip; warm transcriber without activity longer than maxIdleInMs
+ *  recycled before vendor's idle timeout.
+ */
+@Slf4j
+public class ASRWarmPool {
+    public interface TranscriberBuilder {
+        SpeechTranscriber build(final ASRAgent agent, final SpeechTranscriberListener listener) throws Exception;
+    }
+
+    public ASRWarmPool(final Supplier<List<ASRAgent>> agents,
+                       final AgentLeaseService leaseService,
+                       final TranscriberBuilder builder,
+                       final int targetPerAgent,
+                       final long maxIdleInMs,
+                       final long maxHoldInMs) {
+        _agents = agents;
+        _leaseService = leaseService;
+        _builder = builder;
+        _targetPerAgent = targetPerAgent;
+        _maxIdleInMs = maxIdleInMs;
+        _maxHoldInMs = maxHoldInMs;
+    }
+
+    public void start() {
+        if (_targetPerAgent <= 0) {
+            log.info("asr warm pool disabled");
+            return;
+        }
+        _poolExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("asrWarmPool"));
+        _poolExecutor.scheduleWithFixedDelay(this::maintain, 0, 1000, TimeUnit.MILLISECONDS);
+        log.info("asr warm pool: {} per agent, max idle: {} ms", _targetPerAgent, _maxIdleInMs);
+    }
+
+    public void stop() {
+        if (null != _poolExecutor) {
+            _poolExecutor.shutdownNow();
+        }
+        WarmTranscriber warm;
+        while ((warm = _warms.pollFirst()) != null) {
+            warm.retire();
+        }
+    }
+
+    /**
+     * @return connected transcriber not started yet, configured by session before start, or null if none available
+     */
+    public WarmTranscriber acquire() {
+        final long now = System.currentTimeMillis();
+        WarmTranscriber warm;
+        while ((warm = _warms.pollFirst()) != null) {
+            if (warm.isUsable(now) && isHealthy(warm._lease.agent())) {
+                _hitCount.incrementAndGet();
+                return warm;
+            }
+            warm.retire();
+        }
+        _missCount.incrementAndGet();
+        return null;
+    }
+
+    public int size() {
+        return _warms.size();
+    }
+
+    private void maintain() {
+        try {
+            final long now = System.currentTimeMillis();
+            final List<ASRAgent> agents = _agents.get();
+            for (WarmTranscriber warm : _warms) {
+                // 空闲超时 / 已失败 / agent 已被移除或熔断的 warm transcriber 回收
+                if ((!warm.isUsable(now) || !isHealthy(warm._lease.agent())
+                        || agents.stream().noneMatch(agent -> agent == warm._lease.agent()))
+                        && _warms.remove(warm)) {
+                    warm.retire();
+                }
+            }
+            for (ASRAgent agent : agents) {
+                int count = (int) _warms.stream().filter(warm -> warm._lease.agent() == agent).count();
+                while (count < _targetPerAgent && warmUp(agent)) {
+                    count++;
+                }
+            }
+        } catch (Exception ex) {
+            log.warn("asr warm pool maintain failed, detail: {}", ex.toString());
+        }
+    }
+
+    /**
+     * warm transcriber only kept for agent with CLOSED circuit: OPEN agent must not take new sessions,
+     *  HALF_OPEN agent's sessions must go through probe permits (warm session bypass them)
+     */
+    private static boolean isHealthy(final ASRAgent agent) {
+        return agent.get_health().state() == AgentHealth.State.CLOSED;
+    }
+
+    private boolean warmUp(final ASRAgent agent) {
+        if (!isHealthy(agent)) {
+            // 熔断中不预热, 预热连接不占用 HALF_OPEN 的探测名额
+            return false;
+        }
+        if (null == agent.checkAndSelectIfHasIdle()) {
+            // agent 已满
+            return false;
+        }
+        final AgentLease<ASRAgent> lease = _leaseService.lease(agent, "warm-pool", ()->true, _maxHoldInMs);
+        final DelegatingListener listener = new DelegatingListener();
+        SpeechTranscriber transcriber = null;
+        try {
+            // connect only, session settings applied and started after bind
+            transcriber = _builder.build(agent, listener);
+            _warms.addLast(new WarmTranscriber(lease, transcriber, listener));
+            return true;
+        } catch (Exception ex) {
+            log.warn("asr warm pool: warm up {} failed, detail: {}", agent.getName(), ex.toString());
+            agent.recordFailure("warm asr connect failed: " + ex);
+            if (null != transcriber) {
+                transcriber.close();
+            }
+            lease.close();
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("warm pool(size:%d/hit:%d/miss:%d/recycled:%d)", _warms.size(), _hitCount.get(), _missCount.get(), _recycledCount.get());
+    }
+
+    public class WarmTranscriber {
+        WarmTranscriber(final AgentLease<ASRAgent> lease, final SpeechTranscriber transcriber, final DelegatingListener listener) {
+            _lease = lease;
+            _transcriber = transcriber;
+            _listener = listener;
+        }
+
+        public AgentLease<ASRAgent> lease() {
+            return _lease;
+        }
+
+        public SpeechTranscriber transcriber() {
+            return _transcriber;
+        }
+
+        /**
+         * hand over to session: rebind lease owner and forward events to session's listener,
+         *  called before session start() the transcriber
+         */
+        public void bind(final String owner, final BooleanSupplier ownerAlive, final SpeechTranscriberListener target) {
+            _lease.rebind(owner, ownerAlive);
+            _listener.bind(target);
+        }
+
+        boolean isUsable(final long now) {
+            return !_listener._failed && !_lease.isClosed() && now - _listener._lastActiveInMs < _maxIdleInMs;
+        }
+
+        void retire() {
+            _recycledCount.incrementAndGet();
+            try {
+                _transcriber.close();
+            } catch (Exception ex) {
+                log.warn("asr warm pool: close transcriber failed, detail: {}", ex.toString());
+            } finally {
+                _lease.close();
+            }
+        }
+
+        private final AgentLease<ASRAgent> _lease;
+        private final SpeechTranscriber _transcriber;
+        private final DelegatingListener _listener;
+    }
+
+    /**
+     * transcriber's listener fixed when created, so forward events to session's listener after bind,
+     *  any event from vendor counted as activity of the connection
+     */
+    static class DelegatingListener extends SpeechTranscriberListener {
+        void bind(final SpeechTranscriberListener target) {
+            target.setSpeechTranscriber(getSpeechTranscriber());
+            _target = target;
+        }
+
+        @Override
+        public void onTranscriberStart(final SpeechTranscriberResponse response) {
+            _lastActiveInMs = System.currentTimeMillis();
+            final SpeechTranscriberListener target = _target;
+            if (null != target) {
+                target.onTranscriberStart(response);
+            }
+        }
+
+        @Override
+        public void onSentenceBegin(final SpeechTranscriberResponse response) {
+            _lastActiveInMs = System.currentTimeMillis();
+            final SpeechTranscriberListener target = _target;
+            if (null != target) {
+                target.onSentenceBegin(response);
+            }
+        }
+
+        @Override
+        public void onSentenceEnd(final SpeechTranscriberResponse response) {
+            _lastActiveInMs = System.currentTimeMillis();
+            final SpeechTranscriberListener target = _target;
+            if (null != target) {
+                target.onSentenceEnd(response);
+            }
+        }
+
+        @Override
+        public void onTranscriptionResultChange(final SpeechTranscriberResponse response) {
+            _lastActiveInMs = System.currentTimeMillis();
+            final SpeechTranscriberListener target = _target;
+            if (null != target) {
+                target.onTranscriptionResultChange(response);
+            }
+        }
+
+        @Override
+        public void onTranscriptionComplete(final SpeechTranscriberResponse response) {
+            _lastActiveInMs = System.currentTimeMillis();
+            final SpeechTranscriberListener target = _target;
+            if (null != target) {
+                target.onTranscriptionComplete(response);
+            }
+        }
+
+        @Override
+        public void onFail(final SpeechTranscriberResponse response) {
+            _lastActiveInMs = System.currentTimeMillis();
+            _failed = true;
+            final SpeechTranscriberListener target = _target;
+            if (null != target) {
+                target.onFail(response);
+            }
+        }
+
+        private volatile SpeechTranscriberListener _target = null;
+        private volatile boolean _failed = false;
+        private volatile long _lastActiveInMs = System.currentTimeMillis();
+    }
+
+    private final Supplier<List<ASRAgent>> _agents;
+    private final AgentLeaseService _leaseService;
+    private final TranscriberBuilder _builder;
+    private final int _targetPerAgent;
+    private final long _maxIdleInMs;
+    private final long _maxHoldInMs;
+    private final Deque<WarmTranscriber> _warms = new ConcurrentLinkedDeque<>();
+    private ScheduledExecutorService _poolExecutor;
+
+    private final AtomicLong _hitCount = new AtomicLong(0);
+    private final AtomicLong _missCount = new AtomicLong(0);
+    private final AtomicLong _recycledCount = new AtomicLong(0);
+}
@@ -0,0 +1,192 @@
+package com.yulore.medhub.nls;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * health tracker & circuit breaker of one agent:
+ *  CLOSED    => normal, count failures in current window
+ *  OPEN      => too many failures, skip this agent until open duration elapsed
+ *  HALF_OPEN => allow a trickle of probe requests, close on enough success, re-open on any failure
+ */
+@Slf4j
+public class AgentHealth {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public record Config(int consecutiveFailures,   // open circuit when consecutive failures reached
+                         float failureRatio,         // or when failure ratio in window reached
+                         int minCallsInWindow,       // min calls in window before check failure ratio
+                         long windowInMs,
+                         long slowStartInMs,         // start latency greater than this count as failure
+                         long openDurationInMs,      // keep OPEN before try probe
+                         int maxProbes,              // concurrent probe requests in HALF_OPEN
+                         int successToClose) {       // probe success count to close circuit
+        public static final Config DEFAULT = new Config(5, 0.5f, 10, 30_000L, 3_000L, 30_000L, 1, 3);
+    }
+
+    public AgentHealth(final Supplier<String> name) {
+        _name = name;
+    }
+
+    public void configure(final Config config) {
+        _config = config;
+    }
+
+    /**
+     * check & occupy probe permit if in HALF_OPEN state, should be paired with onSuccess/onFailure/cancelRequest
+     * @return true if request allowed to this agent
+     */
+    public boolean allowRequest() {
+        while (true) {
+            final State state = _state.get();
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.currentTimeMillis() - _openedAt.get() < _config.openDurationInMs()) {
+                        return false;
+                    }
+                    if (_state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                        _probesInFlight.set(0);
+                        _probeSuccess.set(0);
+                        log.info("agent({}): circuit OPEN => HALF_OPEN, start probing", _name.get());
+                    }
+                    // re-check as HALF_OPEN
+                    break;
+                case HALF_OPEN:
+                    final int inFlight = _probesInFlight.get();
+                    if (inFlight >= _config.maxProbes()) {
+                        if (System.currentTimeMillis() - _lastProbeAt.get() < _config.openDurationInMs()) {
+                            return false;
+                        }
+                        // probe without any result too long (eg: session closed before start), reset probe permits
+                        _probesInFlight.compareAndSet(inFlight, 0);
+                        break;
+                    }
+                    if (_probesInFlight.compareAndSet(inFlight, inFlight + 1)) {
+                        _lastProbeAt.set(System.currentTimeMillis());
+                        return true;
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return true if allowRequest may success, without occupy any probe permit
+     */
+    public boolean isAvailable() {
+        final State state = _state.get();
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> System.currentTimeMillis() - _openedAt.get() >= _config.openDurationInMs();
+            case HALF_OPEN -> _probesInFlight.get() < _config.maxProbes();
+        };
+    }
+
+    /**
+     * release probe permit occupied by allowRequest without any result, eg: agent has full
+     */
+    public void cancelRequest() {
+        if (_state.get() == State.HALF_OPEN) {
+            _probesInFlight.updateAndGet(count -> count > 0 ? count - 1 : 0);
+        }
+    }
+
+    public void onSuccess(final long startLatencyInMs) {
+        if (startLatencyInMs > _config.slowStartInMs()) {
+            onFailure("slow start: " + startLatencyInMs + " ms");
+            return;
+        }
+        _totalSuccess.incrementAndGet();
+        _consecutiveFailures.set(0);
+        rollWindow().successes.incrementAndGet();
+        if (_state.get() == State.HALF_OPEN) {
+            _probesInFlight.updateAndGet(count -> count > 0 ? count - 1 : 0);
+            if (_probeSuccess.incrementAndGet() >= _config.successToClose()
+                    && _state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                _window.set(new Window(System.currentTimeMillis()));
+                log.info("agent({}): circuit HALF_OPEN => CLOSED, agent recovered", _name.get());
+            }
+        }
+    }
+
+    public void onFailure(final String reason) {
+        _totalFailures.incrementAndGet();
+        _lastFailure = reason;
+        final int consecutive = _consecutiveFailures.incrementAndGet();
+        final Window window = rollWindow();
+        final int failures = window.failures.incrementAndGet();
+        final int calls = failures + window.successes.get();
+
+        final State state = _state.get();
+        if (state == State.HALF_OPEN) {
+            // probe failed, open again
+            if (_state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
+                _openedAt.set(System.currentTimeMillis());
+                log.warn("agent({}): circuit HALF_OPEN => OPEN, probe failed: {}", _name.get(), reason);
+            }
+        } else if (state == State.CLOSED) {
+            if (consecutive >= _config.consecutiveFailures()
+                    || (calls >= _config.minCallsInWindow() && failures >= calls * _config.failureRatio())) {
+                if (_state.compareAndSet(State.CLOSED, State.OPEN)) {
+                    _openedAt.set(System.currentTimeMillis());
+                    _totalOpened.incrementAndGet();
+                    log.warn("agent({}): circuit CLOSED => OPEN, consecutive failures: {}, window: {}/{}, last: {}",
+                            _name.get(), consecutive, failures, calls, reason);
+                }
+            }
+        }
+    }
+
+    public State state() {
+        return _state.get();
+    }
+
+    private Window rollWindow() {
+        final long now = System.currentTimeMillis();
+        final Window current = _window.get();
+        if (now - current.startInMs < _config.windowInMs()) {
+            return current;
+        }
+        final Window next = new Window(now);
+        return _window.compareAndSet(current, next) ? next : _window.get();
+    }
+
+    @Override
+    public String toString() {
+        final Window window = _window.get();
+        return String.format("%s(success:%d/failure:%d/opened:%d/window:%d-%d/last_failure:%s)",
+                _state.get(), _totalSuccess.get(), _totalFailures.get(), _totalOpened.get(),
+                window.successes.get(), window.failures.get(), _lastFailure);
+    }
+
+    private static class Window {
+        Window(final long startInMs) {
+            this.startInMs = startInMs;
+        }
+        final long startInMs;
+        final AtomicInteger successes = new AtomicInteger(0);
+        final AtomicInteger failures = new AtomicInteger(0);
+    }
+
+    private final Supplier<String> _name;
+    private volatile Config _config = Config.DEFAULT;
+    private volatile String _lastFailure = null;
+
+    private final AtomicReference<State> _state = new AtomicReference<>(State.CLOSED);
+    private final AtomicLong _openedAt = new AtomicLong(0);
+    private final AtomicInteger _consecutiveFailures = new AtomicInteger(0);
+    private final AtomicInteger _probesInFlight = new AtomicInteger(0);
+    private final AtomicInteger _probeSuccess = new AtomicInteger(0);
+    private final AtomicLong _lastProbeAt = new AtomicLong(0);
+    private final AtomicReference<Window> _window = new AtomicReference<>(new Window(System.currentTimeMillis()));
+
+    private final AtomicLong _totalSuccess = new AtomicLong(0);
+    private final AtomicLong _totalFailures = new AtomicLong(0);
+    private final AtomicLong _totalOpened = new AtomicLong(0);
+}
@@ -0,0 +1,93 @@
+package com.yulore.medhub.nls;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * one occupied connection slot of agent, pair of checkAndSelectIfHasIdle / decConnection
+ * (and incConnected / decConnected once connected), close() is idempotent, so can be called safely from any path.
+ * lease not closed by its owner is reclaimed by AgentLeaseService when owner gone or deadline passed.
+ */
+@Slf4j
+public class AgentLease<T extends SelectableAgent> implements AutoCloseable {
+    private static final int IDLE = 0;
+    private static final int CONNECTED = 1;
+    private static final int CLOSED = 2;
+
+    AgentLease(final T agent, final String owner, final BooleanSupplier ownerAlive, final long maxHoldInMs,
+               final Consumer<AgentLease<?>> onClosed) {
+        _agent = agent;
+        _owner = owner;
+        _ownerAlive = ownerAlive;
+        _acquiredInMs = System.currentTimeMillis();
+        _deadlineInMs = _acquiredInMs + maxHoldInMs;
+        _onClosed = onClosed;
+    }
+
+    public T agent() {
+        return _agent;
+    }
+
+    public String owner() {
+        return _owner;
+    }
+
+    /**
+     * hand over lease to new owner, eg: pre-connected transcriber bound to session
+     */
+    public void rebind(final String owner, final BooleanSupplier ownerAlive) {
+        _owner = owner;
+        _ownerAlive = ownerAlive;
+    }
+
+    /**
+     * mark slot connected (eg: transcription started), counted to agent's connected count until closed
+     */
+    public void markConnected() {
+        // single state CAS: either counted here & decremented by close(), or already closed
+        if (_state.compareAndSet(IDLE, CONNECTED)) {
+            _agent.incConnected();
+        }
+    }
+
+    public boolean isClosed() {
+        return _state.get() == CLOSED;
+    }
+
+    @Override
+    public void close() {
+        final int prev = _state.getAndSet(CLOSED);
+        if (prev != CLOSED) {
+            if (prev == CONNECTED) {
+                _agent.decConnected();
+            }
+            _agent.decConnection();
+            _onClosed.accept(this);
+        }
+    }
+
+    boolean isLeaked(final long now) {
+        return !isClosed() && (now > _deadlineInMs || !_ownerAlive.getAsBoolean());
+    }
+
+    long heldInMs(final long now) {
+        return now - _acquiredInMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("lease(%s@%s, held: %d ms, connected: %s, closed: %s)",
+                _owner, _agent.getName(), System.currentTimeMillis() - _acquiredInMs, _state.get() == CONNECTED, isClosed());
+    }
+
+    private final T _agent;
+    private volatile String _owner;
+    private volatile BooleanSupplier _ownerAlive;
+    private final long _acquiredInMs;
+    private final long _deadlineInMs;
+    private final Consumer<AgentLease<?>> _onClosed;
+    private final AtomicInteger _state = new AtomicInteger(IDLE);
+}
@@ -0,0 +1,82 @@
+package com.yulore.medhub.nls;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * hand out agent's slot as AgentLease, and reclaim leaked leases periodically:
+ *  owner gone (eg: websocket closed) or held longer than max hold time but never closed.
+ */
+@Slf4j
+@Component
+public class AgentLeaseService {
+    @Value("${nls.lease.reap_interval_ms:5000}")
+    private long _reap_interval_ms;
+
+    @PostConstruct
+    public void start() {
+        _reapExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("leaseReapExecutor"));
+        _reapExecutor.scheduleWithFixedDelay(this::reapLeaked, _reap_interval_ms, _reap_interval_ms, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        _reapExecutor.shutdownNow();
+    }
+
+    /**
+     * wrap slot already occupied by agent.checkAndSelectIfHasIdle() as lease
+     * @param ownerAlive return false when owner gone, lease will be reclaimed if still not closed
+     * @param maxHoldInMs deadline of lease, lease will be reclaimed if still not closed after it
+     */
+    public <T extends SelectableAgent> AgentLease<T> lease(final T agent,
+                                                           final String owner,
+                                                           final BooleanSupplier ownerAlive,
+                                                           final long maxHoldInMs) {
+        final AgentLease<T> lease = new AgentLease<>(agent, owner, ownerAlive, maxHoldInMs, _leases::remove);
+        _leases.add(lease);
+        return lease;
+    }
+
+    public int activeCount() {
+        return _leases.size();
+    }
+
+    /**
+     * @return count of leases reclaimed by reaper since start, should be 0 if all paths release properly
+     */
+    public long leakedCount() {
+        return _leakedCount.get();
+    }
+
+    void reapLeaked() {
+        final long now = System.currentTimeMillis();
+        for (AgentLease<?> lease : _leases) {
+            try {
+                if (lease.isLeaked(now)) {
+                    log.warn("reclaim leaked {}, held {} ms, total leaked: {}",
+                            lease, lease.heldInMs(now), _leakedCount.incrementAndGet());
+                    lease.close();
+                }
+            } catch (Exception ex) {
+                log.warn("reclaim {} failed, detail: {}", lease, ex.toString());
+            }
+        }
+    }
+
+    private ScheduledExecutorService _reapExecutor;
+    private final Set<AgentLease<?>> _leases = ConcurrentHashMap.newKeySet();
+    private final AtomicLong _leakedCount = new AtomicLong(0);
+}
@@ -0,0 +1,47 @@
+package com.yulore.medhub.nls;
+
+/**
+ * slots of one agent's account usable by this node.
+ *  without cluster coordination, all configured limit is usable (granted = Integer.MAX_VALUE),
+ *  otherwise granted is the count of slots borrowed from QuotaCoordinator, maintained by NlsQuotaService.
+ */
+public class AgentQuota {
+    /**
+     * @param configured limit of account, shared by all hub nodes
+     * @return concurrency limit of this agent on current node
+     */
+    public int limitOf(final int configured) {
+        return Math.min(configured, _granted);
+    }
+
+    public int granted() {
+        return _granted;
+    }
+
+    void setGranted(final int granted) {
+        _granted = granted;
+    }
+
+    void setOnExhausted(final Runnable onExhausted) {
+        _onExhausted = onExhausted;
+    }
+
+    /**
+     * called when borrowed slots used up but configured limit not reached yet,
+     * trigger async borrow more slots, never block select path
+     */
+    void onExhausted() {
+        final Runnable onExhausted = _onExhausted;
+        if (null != onExhausted) {
+            onExhausted.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return _granted == Integer.MAX_VALUE ? "local" : "granted:" + _granted;
+    }
+
+    private volatile int _granted = Integer.MAX_VALUE;
+    private volatile Runnable _onExhausted = null;
+}
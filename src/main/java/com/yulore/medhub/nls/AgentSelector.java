@@ -0,0 +1,20 @@
+package com.yulore.medhub.nls;
+
+import java.util.List;
+
+public interface AgentSelector {
+    /**
+     * select one agent from agents and occupy one connection slot of it
+     * @return selected agent, or null if all agents has full
+     */
+    <T extends SelectableAgent> T select(final List<T> agents);
+
+    static AgentSelector of(final String strategy) {
+        if ("first_idle".equals(strategy)) {
+            return new FirstIdleSelector();
+        } else {
+            // default: least_loaded
+            return new LeastLoadedSelector(LeastLoadedSelector.DEFAULT_LATENCY_REF_MS);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.yulore.medhub.nls;
+
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * select the first agent which has idle slot, in agents list order
+ */
+@ToString
+public class FirstIdleSelector implements AgentSelector {
+    @Override
+    public <T extends SelectableAgent> T select(final List<T> agents) {
+        for (T agent : agents) {
+            if (null != agent.checkAndSelectIfHasIdle()) {
+                return agent;
+            }
+        }
+        return null;
+    }
+}
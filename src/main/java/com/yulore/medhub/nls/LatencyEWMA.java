@@ -0,0 +1,41 @@
+package com.yulore.medhub.nls;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * lock-free exponentially weighted moving average of observed latency (in ms),
+ * the double value is stored as raw long bits inside AtomicLong.
+ */
+public class LatencyEWMA {
+    public LatencyEWMA(final double alpha) {
+        _alpha = alpha;
+    }
+
+    public void record(final long latencyInMs) {
+        while (true) {
+            final long currentBits = _valueBits.get();
+            final double current = Double.longBitsToDouble(currentBits);
+            // 首次采样直接作为初始值
+            final double next = current < 0 ? latencyInMs : current + _alpha * (latencyInMs - current);
+            if (_valueBits.compareAndSet(currentBits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return current average in ms, or 0 if no sample recorded yet
+     */
+    public double value() {
+        final double current = Double.longBitsToDouble(_valueBits.get());
+        return current < 0 ? 0 : current;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1fms", value());
+    }
+
+    private final double _alpha;
+    private final AtomicLong _valueBits = new AtomicLong(Double.doubleToRawLongBits(-1.0));
+}
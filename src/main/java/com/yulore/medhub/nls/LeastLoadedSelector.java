@@ -0,0 +1,63 @@
+package com.yulore.medhub.nls;
+
+import lombok.ToString;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * least-connections selector: agent's score = remaining headroom (effectiveLimit - connectingOrConnected),
+ * penalized by observed latency EWMA, try to occupy agent with the highest score first.
+ * no lock on select path, slot occupied via agent's CAS checkAndSelectIfHasIdle.
+ */
+@ToString
+public class LeastLoadedSelector implements AgentSelector {
+    static final long DEFAULT_LATENCY_REF_MS = 200;
+
+    public LeastLoadedSelector(final long latencyRefInMs) {
+        _latencyRefInMs = latencyRefInMs;
+    }
+
+    @Override
+    public <T extends SelectableAgent> T select(final List<T> agents) {
+        final Object[] candidates = agents.toArray();
+        final double[] scores = new double[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            scores[i] = scoreOf((SelectableAgent) candidates[i]);
+        }
+
+        // try candidates by score desc, skip candidate which full when occupy
+        for (int tried = 0; tried < candidates.length; tried++) {
+            int best = -1;
+            for (int i = 0; i < candidates.length; i++) {
+                if (scores[i] > 0 && (best == -1 || scores[i] > scores[best])) {
+                    best = i;
+                }
+            }
+            if (best == -1) {
+                // 所有的 agent 均无剩余并发数
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            final T agent = (T) candidates[best];
+            if (null != agent.checkAndSelectIfHasIdle()) {
+                return agent;
+            }
+            // 被其他线程抢先占满, 尝试下一个
+            scores[best] = 0;
+        }
+        return null;
+    }
+
+    private double scoreOf(final SelectableAgent agent) {
+        final int headroom = agent.effectiveLimit() - agent.get_connectingOrConnectedCount().get();
+        if (headroom <= 0 || !agent.get_health().isAvailable()) {
+            return 0;
+        }
+        // random tie-breaker in [1.0, 1.01), avoid all threads / nodes hit the same agent when scores equal
+        final double tieBreaker = 1.0 + ThreadLocalRandom.current().nextDouble() * 0.01;
+        return headroom * tieBreaker / (1.0 + agent.latencyInMs() / _latencyRefInMs);
+    }
+
+    private final long _latencyRefInMs;
+}
@@ -0,0 +1,93 @@
+package com.yulore.medhub.nls;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * in-process QuotaCoordinator: all nodes share the same instance,
+ * used for single node deployment & tests, and as reference implementation of lease semantics.
+ */
+@Slf4j
+public class LocalQuotaCoordinator implements QuotaCoordinator {
+    @Override
+    public synchronized int borrow(final String nodeId, final String account, final int accountLimit,
+                                   final int count, final long leaseInMs) {
+        final long now = System.currentTimeMillis();
+        _accountLimits.put(account, accountLimit);
+        final Map<String, Lease> leases = leasesOf(account, now);
+        final int granted = Math.max(0, Math.min(count, accountLimit - usedOf(leases)));
+        if (granted > 0) {
+            final Lease lease = leases.computeIfAbsent(nodeId, k -> new Lease());
+            lease.count += granted;
+            lease.expireAt = now + leaseInMs;
+        }
+        return granted;
+    }
+
+    @Override
+    public synchronized Map<String, Integer> renew(final String nodeId, final Map<String, Integer> held,
+                                                   final long leaseInMs) {
+        final long now = System.currentTimeMillis();
+        final Map<String, Integer> renewed = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : held.entrySet()) {
+            final Map<String, Lease> leases = leasesOf(entry.getKey(), now);
+            Lease lease = leases.get(nodeId);
+            if (null == lease) {
+                // lease expired, try re-borrow held slots as possible
+                final int limit = _accountLimits.getOrDefault(entry.getKey(), 0);
+                final int count = Math.max(0, Math.min(entry.getValue(), limit - usedOf(leases)));
+                if (count == 0) {
+                    renewed.put(entry.getKey(), 0);
+                    continue;
+                }
+                lease = new Lease();
+                lease.count = count;
+                leases.put(nodeId, lease);
+                log.warn("node: {} lease of {} expired, re-borrow {}/{}", nodeId, entry.getKey(), count, entry.getValue());
+            }
+            lease.expireAt = now + leaseInMs;
+            renewed.put(entry.getKey(), lease.count);
+        }
+        return renewed;
+    }
+
+    @Override
+    public synchronized void giveBack(final String nodeId, final String account, final int count) {
+        final Map<String, Lease> leases = _account2leases.get(account);
+        final Lease lease = null != leases ? leases.get(nodeId) : null;
+        if (null != lease) {
+            lease.count = Math.max(0, lease.count - count);
+            if (lease.count == 0) {
+                leases.remove(nodeId);
+            }
+        }
+    }
+
+    /**
+     * @return slots of account held by all nodes, for monitoring & tests
+     */
+    public synchronized int usedOf(final String account) {
+        return usedOf(leasesOf(account, System.currentTimeMillis()));
+    }
+
+    private Map<String, Lease> leasesOf(final String account, final long now) {
+        final Map<String, Lease> leases = _account2leases.computeIfAbsent(account, k -> new HashMap<>());
+        // reclaim slots of expired lease, eg: node crashed
+        leases.values().removeIf(lease -> lease.expireAt <= now);
+        return leases;
+    }
+
+    private static int usedOf(final Map<String, Lease> leases) {
+        return leases.values().stream().mapToInt(lease -> lease.count).sum();
+    }
+
+    private static class Lease {
+        int count = 0;
+        long expireAt = 0;
+    }
+
+    private final Map<String, Map<String, Lease>> _account2leases = new HashMap<>();
+    private final Map<String, Integer> _accountLimits = new HashMap<>();
+}
@@ -0,0 +1,248 @@
+package com.yulore.medhub.nls;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * share account concurrency limit between hub nodes via QuotaCoordinator:
+ *  each agent borrow slots in block from coordinator, keep [low watermark, 2 blocks] idle slots,
+ *  renew all leases in one batch periodically, and give back surplus blocks when idle.
+ *  all coordinator access run in background executor, select path only read local granted slots.
+ *  without coordinator (nls.quota.coordinator=none), agent use whole configured limit as before.
+ */
+@Slf4j
+@Component
+public class NlsQuotaService {
+    // none: 各节点独立使用配置的 limit; in_process: 进程内 coordinator, 用于单节点及测试
+    // 若 Spring 容器中存在 QuotaCoordinator bean, 则优先使用
+    @Value("${nls.quota.coordinator:none}")
+    private String _coordinator_type;
+
+    @Value("${nls.quota.node_id:}")
+    private String _node_id;
+
+    @Value("${nls.quota.block:4}")
+    private int _block;
+
+    @Value("${nls.quota.lease_ms:30000}")
+    private long _lease_ms;
+
+    @Value("${nls.quota.renew_interval_ms:10000}")
+    private long _renew_interval_ms;
+
+    @Autowired(required = false)
+    private QuotaCoordinator _coordinator;
+
+    @PostConstruct
+    public void start() {
+        if (null == _coordinator && "in_process".equals(_coordinator_type)) {
+            _coordinator = new LocalQuotaCoordinator();
+        }
+        if (null == _node_id || _node_id.isEmpty()) {
+            // pid@hostname
+            _node_id = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        _quotaExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("nlsQuotaExecutor"));
+        if (null != _coordinator) {
+            _quotaExecutor.scheduleWithFixedDelay(this::rebalanceAndRenew,
+                    _renew_interval_ms, _renew_interval_ms, TimeUnit.MILLISECONDS);
+        }
+        log.info("nls quota: node {} with coordinator: {}, block: {}, lease: {} ms",
+                _node_id, _coordinator, _block, _lease_ms);
+    }
+
+    @PreDestroy
+    public void stop() {
+        _quotaExecutor.shutdownNow();
+        if (null != _coordinator) {
+            for (Borrower borrower : _account2borrower.values()) {
+                borrower.giveBackAll();
+            }
+            for (Borrower borrower : _retiring) {
+                borrower.giveBackAll();
+            }
+        }
+    }
+
+    /**
+     * @param account key of agent's account, same on all nodes, eg: "asr:<name>"
+     */
+    public void register(final String account, final SelectableAgent agent) {
+        if (null == _coordinator) {
+            return;
+        }
+        final Borrower borrower = new Borrower(account, agent);
+        agent.get_quota().setGranted(0);
+        agent.get_quota().setOnExhausted(borrower::borrowAsync);
+        final Borrower prev = _account2borrower.put(account, borrower);
+        if (null != prev) {
+            // 旧 agent 可能仍有会话持有 lease: 保留其在用 slot, 随会话结束逐步归还, 排空后由 unregister 归还剩余
+            prev._agent.get_quota().setOnExhausted(null);
+            _retiring.add(prev);
+            _quotaExecutor.execute(prev::shrinkToInUse);
+        }
+        borrower.borrowAsync();
+    }
+
+    /**
+     * give back all slots of agent, eg: agent removed and drained
+     */
+    public void unregister(final String account, final SelectableAgent agent) {
+        final Borrower borrower = _account2borrower.get(account);
+        // agent may has been replaced by new agent with the same account
+        if (null != borrower && borrower._agent == agent && _account2borrower.remove(account, borrower)) {
+            borrower._agent.get_quota().setOnExhausted(null);
+            _quotaExecutor.execute(borrower::giveBackAll);
+            return;
+        }
+        for (Borrower retiring : _retiring) {
+            if (retiring._agent == agent && _retiring.remove(retiring)) {
+                _quotaExecutor.execute(retiring::giveBackAll);
+            }
+        }
+    }
+
+    private void rebalanceAndRenew() {
+        final Map<String, Integer> held = new HashMap<>();
+        for (Borrower borrower : _account2borrower.values()) {
+            try {
+                borrower.rebalance();
+            } catch (Exception ex) {
+                log.warn("nls quota: rebalance {} failed, detail: {}", borrower._account, ex.toString());
+            }
+            held.merge(borrower._account, borrower._agent.get_quota().granted(), Integer::sum);
+        }
+        final Map<String, Integer> retiringHeld = new HashMap<>();
+        for (Borrower borrower : _retiring) {
+            borrower.shrinkToInUse();
+            // replaced agent's slots still in use, renewed with the account until drained
+            retiringHeld.merge(borrower._account, borrower._agent.get_quota().granted(), Integer::sum);
+        }
+        retiringHeld.forEach((account, granted) -> held.merge(account, granted, Integer::sum));
+        if (held.isEmpty()) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        try {
+            final Map<String, Integer> renewed = _coordinator.renew(_node_id, held, _lease_ms);
+            _lastRenewAt = now;
+            for (Map.Entry<String, Integer> entry : renewed.entrySet()) {
+                final Borrower borrower = _account2borrower.get(entry.getKey());
+                if (null != borrower && !entry.getValue().equals(held.get(entry.getKey()))) {
+                    log.warn("nls quota: {} held {} but renewed {}", entry.getKey(), held.get(entry.getKey()), entry.getValue());
+                    borrower._agent.get_quota().setGranted(
+                            Math.max(0, entry.getValue() - retiringHeld.getOrDefault(entry.getKey(), 0)));
+                }
+            }
+        } catch (Exception ex) {
+            log.warn("nls quota: renew leases failed, detail: {}", ex.toString());
+            if (now - _lastRenewAt > _lease_ms) {
+                // 租约已过期, 可能已被其他节点借走, 停止新建会话, 直到重新续约成功
+                log.error("nls quota: leases expired, stop new session until renew success");
+                for (Borrower borrower : _account2borrower.values()) {
+                    borrower._agent.get_quota().setGranted(0);
+                }
+            }
+        }
+    }
+
+    private class Borrower {
+        Borrower(final String account, final SelectableAgent agent) {
+            _account = account;
+            _agent = agent;
+        }
+
+        void borrowAsync() {
+            if (_borrowing.compareAndSet(false, true)) {
+                _quotaExecutor.execute(() -> {
+                    try {
+                        borrow();
+                    } catch (Exception ex) {
+                        log.warn("nls quota: borrow {} failed, detail: {}", _account, ex.toString());
+                    } finally {
+                        _borrowing.set(false);
+                    }
+                });
+            }
+        }
+
+        void rebalance() {
+            final int granted = _agent.get_quota().granted();
+            final int idle = granted - _agent.get_connectingOrConnectedCount().get();
+            if (idle < Math.max(1, _block / 2)) {
+                // 空闲并发数低于低水位, 预借一个 block
+                borrow();
+            } else if (idle > _block * 2) {
+                // 空闲过多, 归还一个 block 供其他节点使用
+                _agent.get_quota().setGranted(granted - _block);
+                _coordinator.giveBack(_node_id, _account, _block);
+                log.info("nls quota: {} give back {}, granted: {}", _account, _block, granted - _block);
+            }
+        }
+
+        /**
+         * replaced agent: give back idle slots, keep slots held by its open leases
+         */
+        void shrinkToInUse() {
+            final int granted = _agent.get_quota().granted();
+            final int inUse = Math.max(0, _agent.get_connectingOrConnectedCount().get());
+            if (granted > inUse) {
+                _agent.get_quota().setGranted(inUse);
+                _coordinator.giveBack(_node_id, _account, granted - inUse);
+                log.info("nls quota: replaced {} give back {}, in use: {}", _account, granted - inUse, inUse);
+            }
+        }
+
+        void giveBackAll() {
+            final int granted = _agent.get_quota().granted();
+            _agent.get_quota().setGranted(0);
+            if (granted > 0) {
+                _coordinator.giveBack(_node_id, _account, granted);
+                log.info("nls quota: {} give back all {}", _account, granted);
+            }
+        }
+
+        private void borrow() {
+            if (_account2borrower.get(_account) != this) {
+                // unregistered
+                return;
+            }
+            final int granted = _agent.get_quota().granted();
+            final int count = Math.min(_block, _agent.getLimit() - granted);
+            if (count <= 0) {
+                return;
+            }
+            final int borrowed = _coordinator.borrow(_node_id, _account, _agent.getLimit(), count, _lease_ms);
+            if (borrowed > 0) {
+                _agent.get_quota().setGranted(granted + borrowed);
+                log.info("nls quota: {} borrowed {}/{}, granted: {}", _account, borrowed, count, granted + borrowed);
+            }
+        }
+
+        final String _account;
+        final SelectableAgent _agent;
+        final AtomicBoolean _borrowing = new AtomicBoolean(false);
+    }
+
+    private ScheduledExecutorService _quotaExecutor;
+    private volatile long _lastRenewAt = System.currentTimeMillis();
+    private final ConcurrentMap<String, Borrower> _account2borrower = new ConcurrentHashMap<>();
+    // borrowers of agents replaced by new agent with the same account, kept until drained
+    private final Set<Borrower> _retiring = ConcurrentHashMap.newKeySet();
+}
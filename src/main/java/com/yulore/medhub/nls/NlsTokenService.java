@@ -0,0 +1,121 @@
+package com.yulore.medhub.nls;
+
+import com.alibaba.nls.client.AccessToken;
+import io.netty.util.NettyRuntime;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * refresh AccessToken of all registered agents in parallel:
+ *  each agent has its own refresh schedule, refresh ahead of expire time with random jitter,
+ *  and retry with exponential backoff when apply failed.
+ */
+@Slf4j
+@Component
+public class NlsTokenService {
+    // 比到期时间提前 refresh_ahead_s 秒进行 AccessToken 的更新
+    @Value("${nls.token.refresh_ahead_s:300}")
+    private long _refresh_ahead_s;
+
+    // 在提前量基础上再随机提前 [0, refresh_jitter_s) 秒, 避免大量账号同时刷新
+    @Value("${nls.token.refresh_jitter_s:120}")
+    private long _refresh_jitter_s;
+
+    @Value("${nls.token.retry_initial_ms:500}")
+    private long _retry_initial_ms;
+
+    @Value("${nls.token.retry_max_ms:30000}")
+    private long _retry_max_ms;
+
+    private ScheduledExecutorService _tokenExecutor;
+
+
+    @PostConstruct
+    public void start() {
+        _tokenExecutor = Executors.newScheduledThreadPool(NettyRuntime.availableProcessors() * 2,
+                new DefaultThreadFactory("nlsTokenExecutor"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        _tokenExecutor.shutdownNow();
+    }
+
+    /**
+     * refresh schedule of one registered agent
+     */
+    public class Registration {
+        Registration(final TokenAgent agent) {
+            _agent = agent;
+        }
+
+        /**
+         * stop refresh token for agent
+         */
+        public void cancel() {
+            _cancelled = true;
+            final ScheduledFuture<?> future = _future.getAndSet(null);
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        private void schedule(final int failedCount, final long delayInMs) {
+            if (!_cancelled) {
+                _future.set(_tokenExecutor.schedule(() -> refresh(this, failedCount), delayInMs, TimeUnit.MILLISECONDS));
+            }
+        }
+
+        private final TokenAgent _agent;
+        private volatile boolean _cancelled = false;
+        private final AtomicReference<ScheduledFuture<?>> _future = new AtomicReference<>(null);
+    }
+
+    /**
+     * register agent and apply its first token immediately (async)
+     */
+    public Registration register(final TokenAgent agent) {
+        final Registration registration = new Registration(agent);
+        registration.schedule(0, 0);
+        return registration;
+    }
+
+    private void refresh(final Registration registration, final int failedCount) {
+        if (registration._cancelled) {
+            return;
+        }
+        final TokenAgent agent = registration._agent;
+        final long startInMs = System.currentTimeMillis();
+        try {
+            final AccessToken accessToken = new AccessToken(agent.getAccessKeyId(), agent.getAccessKeySecret());
+            accessToken.apply();
+            agent.onTokenUpdated(accessToken.getToken(), accessToken.getExpireTime());
+
+            final long delayInMs = Math.max(accessToken.getExpireTime() * 1000L - System.currentTimeMillis()
+                    - _refresh_ahead_s * 1000L
+                    - ThreadLocalRandom.current().nextLong(Math.max(1, _refresh_jitter_s * 1000L)), 0);
+            log.info("agent: {} apply token cost: {} ms, next refresh after {} s",
+                    agent.getName(), System.currentTimeMillis() - startInMs, delayInMs / 1000);
+            registration.schedule(0, delayInMs);
+        } catch (Exception ex) {
+            // jitter backoff: random[0.5, 1.0) * min(initial * 2^failedCount, max)
+            final long backoff = Math.min(_retry_initial_ms << Math.min(failedCount, 16), _retry_max_ms);
+            final long delayInMs = backoff / 2 + ThreadLocalRandom.current().nextLong(Math.max(1, backoff / 2));
+            log.warn("agent: {} apply token failed({} times): {}, retry after {} ms",
+                    agent.getName(), failedCount + 1, ex.toString(), delayInMs);
+            agent.recordFailure("token apply failed: " + ex);
+            registration.schedule(failedCount + 1, delayInMs);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.yulore.medhub.nls;
+
+import java.util.Map;
+
+/**
+ * shared coordinator of account concurrency quota between hub nodes:
+ *  node borrow slots in block, hold them with lease, renew all leases in one batch, and give back when idle.
+ *  coordinator is only accessed by NlsQuotaService in background, never on session's select path.
+ */
+public interface QuotaCoordinator {
+    /**
+     * try borrow slots of account
+     * @param accountLimit total concurrency limit of account
+     * @return granted slots count, in [0, count]
+     */
+    int borrow(final String nodeId, final String account, final int accountLimit, final int count, final long leaseInMs);
+
+    /**
+     * renew leases of all accounts held by node
+     * @param held account => slots held by node
+     * @return account => slots still held by node after renew,
+     *  may be less than held when lease expired and slots borrowed by other node
+     */
+    Map<String, Integer> renew(final String nodeId, final Map<String, Integer> held, final long leaseInMs);
+
+    void giveBack(final String nodeId, final String account, final int count);
+}
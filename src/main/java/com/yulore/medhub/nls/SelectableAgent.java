@@ -0,0 +1,47 @@
+package com.yulore.medhub.nls;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * common view of ASR/TTS/Cosy/TxASR agent used by AgentSelector
+ */
+public interface SelectableAgent {
+    String getName();
+
+    int getLimit();
+
+    void setLimit(final int limit);
+
+    AtomicInteger get_connectingOrConnectedCount();
+
+    /**
+     * try to occupy one connection slot of this agent
+     * @return this agent if occupied success, or null if agent has full
+     */
+    SelectableAgent checkAndSelectIfHasIdle();
+
+    /**
+     * release slot occupied by checkAndSelectIfHasIdle, called by AgentLease.close()
+     */
+    void decConnection();
+
+    void incConnected();
+
+    void decConnected();
+
+    /**
+     * @return observed latency EWMA (in ms) of this agent, 0 means no sample yet
+     */
+    double latencyInMs();
+
+    AgentHealth get_health();
+
+    AgentQuota get_quota();
+
+    /**
+     * @return concurrency limit usable by current node, less than configured limit when quota shared in cluster
+     */
+    default int effectiveLimit() {
+        return get_quota().limitOf(getLimit());
+    }
+}
@@ -1,6 +1,5 @@
 package com.yulore.medhub.nls;
 
-import com.alibaba.nls.client.AccessToken;
 import com.alibaba.nls.client.protocol.NlsClient;
 import com.alibaba.nls.client.protocol.tts.SpeechSynthesizer;
 import com.alibaba.nls.client.protocol.tts.SpeechSynthesizerListener;
@@ -8,30 +7,35 @@ import lombok.Data;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Data
 @ToString
 @Slf4j
-public class TTSAgent {
+public class TTSAgent implements SelectableAgent, TokenAgent {
     NlsClient client;
 
     String name;
     String appKey;
     String accessKeyId;
     String accessKeySecret;
-    int limit = 0;
+    // may be updated when nacos config reloaded
+    volatile int limit = 0;
 
-    AccessToken _accessToken;
+    volatile long _tokenExpireTime = 0;
 
     final AtomicInteger _connectingOrConnectedCount = new AtomicInteger(0);
     final AtomicInteger _connectedCount = new AtomicInteger(0);
+    final LatencyEWMA _latency = new LatencyEWMA(0.2);
+    final AgentHealth _health = new AgentHealth(this::getName);
+    final AgentQuota _quota = new AgentQuota();
 
     final AtomicReference<String> _currentToken = new AtomicReference<String>(null);
+    final CompletableFuture<String> _firstToken = new CompletableFuture<>();
 
     public static TTSAgent parse(final String accountName, final String values) {
         final String[] kvs = values.split(" ");
@@ -64,14 +68,26 @@ public class TTSAgent {
     }
 
     public String currentToken() {
-        return _currentToken.get();
+        final String token = _currentToken.get();
+        // 首个 token 尚未获取到时, 短暂等待, 而不是直接使用 null token 创建会话
+        return token != null ? token : TokenAgent.Util.awaitFirstToken(_firstToken, name);
     }
 
+    @Override
     public TTSAgent checkAndSelectIfHasIdle() {
+        if (!_health.allowRequest()) {
+            // 熔断中, 跳过该 agent
+            return null;
+        }
         while (true) {
             int currentCount = _connectingOrConnectedCount.get();
-            if (currentCount >= limit) {
+            if (currentCount >= _quota.limitOf(limit)) {
                 // 已经超出限制的并发数
+                if (currentCount < limit) {
+                    // 本节点借用的并发数已用尽, 异步向 coordinator 借用更多
+                    _quota.onExhausted();
+                }
+                _health.cancelRequest();
                 return null;
             }
             if (_connectingOrConnectedCount.compareAndSet(currentCount, currentCount + 1)) {
@@ -82,53 +98,48 @@ public class TTSAgent {
         }
     }
 
+    public void recordLatency(final long latencyInMs) {
+        // 记录启动延迟, 同时视为一次成功的调用
+        _latency.record(latencyInMs);
+        _health.onSuccess(latencyInMs);
+    }
+
+    @Override
+    public void recordFailure(final String reason) {
+        _health.onFailure(reason);
+    }
+
+    @Override
+    public double latencyInMs() {
+        return _latency.value();
+    }
+
+    @Override
     public void decConnection() {
         // 减少 连接中或已连接的计数
         final int count = _connectingOrConnectedCount.decrementAndGet();
         log.info("release tts({}): {}/{}", name, count, limit);
     }
 
+    @Override
     public void incConnected() {
         // 增加 已连接的计数
         _connectedCount.incrementAndGet();
     }
 
+    @Override
     public void decConnected() {
         // 减少 已连接的计数
         _connectedCount.decrementAndGet();
     }
 
-    public void checkAndUpdateAccessToken() {
-        if (_accessToken == null) {
-            _accessToken = new AccessToken(accessKeyId, accessKeySecret);
-            try {
-                _accessToken.apply();
-                _currentToken.set(_accessToken.getToken());
-                log.info("tts agent: {} init token: {}, expire time: {}",
-                        name, _accessToken.getToken(),
-                        new SimpleDateFormat().format(new Date(_accessToken.getExpireTime() * 1000)) );
-
-            } catch (IOException e) {
-                log.warn("_accessToken.apply failed: {}", e.toString());
-            }
-        } else {
-            if (System.currentTimeMillis() / 1000 + 5 * 60 >= _accessToken.getExpireTime()) {
-                // 比到期时间提前 5分钟 进行 AccessToken 的更新
-                try {
-                    _accessToken.apply();
-                    _currentToken.set(_accessToken.getToken());
-                    log.info("tts agent: {} update token: {}, expire time: {}",
-                            name, _accessToken.getToken(),
-                            new SimpleDateFormat().format(new Date(_accessToken.getExpireTime() * 1000)) );
-                } catch (IOException e) {
-                    log.warn("_accessToken.apply failed: {}", e.toString());
-                }
-            } else {
-                log.info("tts agent: {} no need update token, expire time: {} connecting:{}, connected: {}",
-                        name,
-                        new SimpleDateFormat().format(new Date(_accessToken.getExpireTime() * 1000)),
-                        _connectingOrConnectedCount.get(), _connectedCount.get());
-            }
-        }
+    @Override
+    public void onTokenUpdated(final String token, final long expireTime) {
+        _currentToken.set(token);
+        _tokenExpireTime = expireTime;
+        _firstToken.complete(token);
+        log.info("tts agent: {} update token, expire time: {}, connecting: {}, connected: {}",
+                name, new SimpleDateFormat().format(new Date(expireTime * 1000)),
+                _connectingOrConnectedCount.get(), _connectedCount.get());
     }
 }
@@ -8,18 +8,25 @@ import com.alibaba.nls.client.protocol.tts.SpeechSynthesizerResponse;
 import lombok.extern.slf4j.Slf4j;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 @Slf4j
 public class TTSTask {
     private SpeechSynthesizer _synthesizer = null;
+    private final TTSAgent _agent;
+    private final AgentLease<TTSAgent> _lease;
+    private final AtomicBoolean _cancelled = new AtomicBoolean(false);
 
-    public TTSTask(final TTSAgent agent,
+    public TTSTask(final AgentLease<TTSAgent> lease,
                    final Consumer<SpeechSynthesizer> setupSynthesizer,
                    final Consumer<ByteBuffer> onData,
                    final Consumer<SpeechSynthesizerResponse> onComplete,
                    final Consumer<SpeechSynthesizerResponse> onFail
                    ) {
+        _lease = lease;
+        _agent = lease.agent();
+        final TTSAgent agent = _agent;
         try {
             _synthesizer = agent.buildSpeechSynthesizer(new SpeechSynthesizerListener() {
                 //语音合成结束
@@ -28,13 +35,16 @@ public class TTSTask {
                     //调用onComplete时表示所有TTS数据已接收完成，因此为整个合成数据的延迟。该延迟可能较大，不一定满足实时场景。
                     log.info("onComplete: name:{}, status:{}", response.getName(), response.getStatus());
                     _synthesizer.close();
-                    agent.decConnection();
+                    lease.close();
                     onComplete.accept(response);
                 }
 
                 //语音合成的语音二进制数据
                 @Override
                 public void onMessage(final ByteBuffer bytes) {
+                    if (_cancelled.get()) {
+                        return;
+                    }
                     onData.accept(bytes);
                 }
 
@@ -43,7 +53,13 @@ public class TTSTask {
                     //task_id是调用方和服务端通信的唯一标识，当遇到问题时需要提供task_id以便排查。
                     log.info("onFail: task_id:{}, status:{}, status_text:{}",
                             response.getTaskId(), response.getStatus(), response.getStatusText());
-                    agent.decConnection();
+                    if (_cancelled.get()) {
+                        // synthesizer closed by cancel(), not agent's failure
+                        lease.close();
+                        return;
+                    }
+                    agent.recordFailure("tts onFail: " + response.getStatus() + "/" + response.getStatusText());
+                    lease.close();
                     onFail.accept(response);
                 }
             });
@@ -59,20 +75,51 @@ public class TTSTask {
             setupSynthesizer.accept(_synthesizer);
         } catch (Exception ex) {
             log.warn("failed to launch tts task, detail: {}", ex.toString());
+            lease.close();
         }
     }
 
     public boolean start() {
+        if (_lease.isClosed() || null == _synthesizer) {
+            // launch failed, slot already released
+            return false;
+        }
         try {
             //此方法将以上参数设置序列化为JSON格式发送给服务端，并等待服务端确认。
+            final long startInMs = System.currentTimeMillis();
             _synthesizer.start();
+            _agent.recordLatency(System.currentTimeMillis() - startInMs);
             return true;
         } catch (Exception ex) {
-            log.warn("failed to start tts task, detail: {}", ex.toString());
+            if (_cancelled.get()) {
+                // synthesizer closed by cancel() during start(), not agent's failure
+                log.info("tts task cancelled during start: {}", ex.toString());
+            } else {
+                log.warn("failed to start tts task, detail: {}", ex.toString());
+                _agent.recordFailure("tts start failed: " + ex);
+            }
+            // start 失败时不会再回调 onComplete/onFail, 在此释放占用的并发数
+            if (null != _synthesizer) {
+                _synthesizer.close();
+            }
+            _lease.close();
             return false;
         }
     }
 
+    /**
+     * close synthesizer & release slot before complete, no more onData after cancel
+     */
+    public void cancel() {
+        if (_cancelled.compareAndSet(false, true) && !_lease.isClosed()) {
+            log.info("cancel tts task by {}", _lease);
+            if (null != _synthesizer) {
+                _synthesizer.close();
+            }
+            _lease.close();
+        }
+    }
+
     public void waitForComplete() throws Exception {
         _synthesizer.waitForComplete();
     }
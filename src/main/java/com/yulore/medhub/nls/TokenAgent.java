@@ -0,0 +1,50 @@
+package com.yulore.medhub.nls;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * agent using aliyun AccessToken, token refreshed by NlsTokenService
+ */
+public interface TokenAgent {
+    // max wait time for the pending first token when build session
+    long FIRST_TOKEN_WAIT_MS = 3000;
+
+    String getName();
+
+    String getAccessKeyId();
+
+    String getAccessKeySecret();
+
+    void onTokenUpdated(final String token, final long expireTime);
+
+    void recordFailure(final String reason);
+
+    @Slf4j
+    final class Util {
+        /**
+         * wait briefly for the first token of agent, instead of failing with a null token
+         */
+        static String awaitFirstToken(final CompletableFuture<String> firstToken, final String name) {
+            final long startInMs = System.currentTimeMillis();
+            try {
+                final String token = firstToken.get(FIRST_TOKEN_WAIT_MS, TimeUnit.MILLISECONDS);
+                log.info("agent: {} wait for first token cost: {} ms", name, System.currentTimeMillis() - startInMs);
+                return token;
+            } catch (TimeoutException ex) {
+                log.warn("agent: {} wait for first token timeout after {} ms", name, FIRST_TOKEN_WAIT_MS);
+                return null;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                log.warn("agent: {} wait for first token interrupted", name);
+                return null;
+            } catch (Exception ex) {
+                log.warn("agent: {} wait for first token failed: {}", name, ex.toString());
+                return null;
+            }
+        }
+    }
+}
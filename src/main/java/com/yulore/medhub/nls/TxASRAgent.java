@@ -16,17 +16,21 @@ import java.util.UUID;
 @Data
 @ToString
 @Slf4j
-public class TxASRAgent {
+public class TxASRAgent implements SelectableAgent {
     SpeechClient client;
 
     String name;
     String appKey;
     String accessKeyId;
     String accessKeySecret;
-    int limit = 0;
+    // may be updated when nacos config reloaded
+    volatile int limit = 0;
 
     final AtomicInteger _connectingOrConnectedCount = new AtomicInteger(0);
     final AtomicInteger _connectedCount = new AtomicInteger(0);
+    final LatencyEWMA _latency = new LatencyEWMA(0.2);
+    final AgentHealth _health = new AgentHealth(this::getName);
+    final AgentQuota _quota = new AgentQuota();
 
     final AtomicReference<String> _currentToken = new AtomicReference<String>(null);
 
@@ -68,11 +72,21 @@ public class TxASRAgent {
         return recognizer;
     }
 
+    @Override
     public TxASRAgent checkAndSelectIfHasIdle() {
+        if (!_health.allowRequest()) {
+            // 熔断中, 跳过该 agent
+            return null;
+        }
         while (true) {
             int currentCount = _connectingOrConnectedCount.get();
-            if (currentCount >= limit) {
+            if (currentCount >= _quota.limitOf(limit)) {
                 // 已经超出限制的并发数
+                if (currentCount < limit) {
+                    // 本节点借用的并发数已用尽, 异步向 coordinator 借用更多
+                    _quota.onExhausted();
+                }
+                _health.cancelRequest();
                 return null;
             }
             if (_connectingOrConnectedCount.compareAndSet(currentCount, currentCount + 1)) {
@@ -83,16 +97,34 @@ public class TxASRAgent {
         }
     }
 
+    public void recordLatency(final long latencyInMs) {
+        // 记录启动延迟, 同时视为一次成功的调用
+        _latency.record(latencyInMs);
+        _health.onSuccess(latencyInMs);
+    }
+
+    public void recordFailure(final String reason) {
+        _health.onFailure(reason);
+    }
+
+    @Override
+    public double latencyInMs() {
+        return _latency.value();
+    }
+
+    @Override
     public void decConnection() {
         // 减少 连接中或已连接的计数
         _connectingOrConnectedCount.decrementAndGet();
     }
 
+    @Override
     public void incConnected() {
         // 增加 已连接的计数
         _connectedCount.incrementAndGet();
     }
 
+    @Override
     public void decConnected() {
         // 减少 已连接的计数
         _connectedCount.decrementAndGet();
@@ -1,21 +1,25 @@
 package com.yulore.medhub.session;
 
 import com.alibaba.nls.client.protocol.asr.SpeechTranscriber;
+import com.yulore.medhub.vad.VADGate;
 import com.yulore.medhub.vo.PayloadSentenceBegin;
 import com.yulore.medhub.vo.PayloadSentenceEnd;
+import com.yulore.util.AudioCodec;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
 
-import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 @ToString
@@ -29,14 +33,6 @@ public class ASRSession {
         return _sessionId;
     }
 
-    public void lock() {
-        _lock.lock();
-    }
-
-    public void unlock() {
-        _lock.unlock();
-    }
-
     public void scheduleCheckIdle(final ScheduledExecutorService executor, final long delay, final Runnable sendCheckEvent) {
         _checkIdleFuture.set(executor.schedule(()->{
             try {
@@ -51,28 +47,132 @@ public class ASRSession {
         }, delay, TimeUnit.MILLISECONDS));
     }
 
+    /**
+     * transcriber lifecycle, all transitions by CAS without holding session lock:
+     *  IDLE -> CONNECTING -> STARTED -> STOPPING -> CLOSED
+     *  stop request during CONNECTING is queued as STOPPING, and executed by the connecting thread
+     *  once vendor start() returned, see {@link #connectCompleted(boolean)}
+     */
+    public enum TranscriberState { IDLE, CONNECTING, STARTED, STOPPING, CLOSED }
+
     public boolean startTranscription() {
-        return _isStartTranscription.compareAndSet(false, true);
+        return _state.compareAndSet(TranscriberState.IDLE, TranscriberState.CONNECTING);
+    }
+
+    public TranscriberState transcriberState() {
+        return _state.get();
+    }
+
+    /**
+     * called by connecting thread after vendor start() returned
+     * @param started vendor transcriber started or not (all providers failed)
+     * @return false if not started or stop requested during connecting (the queued stop executed in caller thread)
+     */
+    public boolean connectCompleted(final boolean started) {
+        if (_state.compareAndSet(TranscriberState.CONNECTING, started ? TranscriberState.STARTED : TranscriberState.CLOSED)) {
+            if (!started) {
+                _closed.complete(null);
+            }
+            return started;
+        }
+        if (started && _state.get() == TranscriberState.STARTED) {
+            // vendor's started callback (transcriptionStarted) arrived before start() returned
+            return true;
+        }
+        if (_state.get() == TranscriberState.STOPPING) {
+            log.info("{} stop requested while connecting, execute queued stop", _sessionId);
+            closeTranscriber();
+        }
+        return false;
     }
 
     public void transcriptionStarted() {
-        _isTranscriptionStarted.compareAndSet(false, true);
+        synchronized (_preStartFrames) {
+            if (_isTranscriptionStarted.get()) {
+                return;
+            }
+            // 先将连接期间缓存的音频一次性(快于实时)发送, 再标记 started, 保证与后续实时音频的顺序
+            final Consumer<byte[]> transmitter = _transmitData.get();
+            final int frames = _preStartFrames.size();
+            while (!_preStartFrames.isEmpty()) {
+                final byte[] frame = _preStartFrames.pollFirst();
+                if (transmitter != null) {
+                    try {
+                        forward(transmitter, frame);
+                        _transmitCount.incrementAndGet();
+                    } catch (Exception ex) {
+                        log.warn("{} flush pre-start frame failed: {}", _sessionId, ex.toString());
+                    }
+                }
+            }
+            _preStartBytes = 0;
+            _isTranscriptionStarted.set(true);
+            _state.compareAndSet(TranscriberState.CONNECTING, TranscriberState.STARTED);
+            if (frames > 0) {
+                log.info("{} flush pre-start audio: {} frames/{} ms, dropped: {} ms",
+                        _sessionId, frames, _preStartBufferedMs.get(), _preStartDroppedMs.get());
+            }
+        }
     }
 
     public boolean isTranscriptionStarted() {
         return _isTranscriptionStarted.get();
     }
 
-    public void stopAndCloseTranscriber() {
+    /**
+     * request stop without blocking caller: vendor stop() executed by executor if started,
+     *  or queued until connecting completed
+     * @return future completed when transcriber closed
+     */
+    public CompletableFuture<Void> stopAndCloseTranscriber(final Executor executor) {
+        while (true) {
+            final TranscriberState state = _state.get();
+            if (state == TranscriberState.IDLE || state == TranscriberState.CLOSED) {
+                if (_state.compareAndSet(state, TranscriberState.CLOSED)) {
+                    _closed.complete(null);
+                    return _closed;
+                }
+            } else if (state == TranscriberState.CONNECTING) {
+                if (_state.compareAndSet(state, TranscriberState.STOPPING)) {
+                    log.info("{} transcriber connecting, queue stop request", _sessionId);
+                    return _closed;
+                }
+            } else if (state == TranscriberState.STARTED) {
+                if (_state.compareAndSet(state, TranscriberState.STOPPING)) {
+                    executor.execute(this::closeTranscriber);
+                    return _closed;
+                }
+            } else {
+                // STOPPING: stop in progress or queued
+                return _closed;
+            }
+        }
+    }
+
+    /**
+     * release transcriber of failed start attempt, keep lifecycle state (may failover to next provider)
+     */
+    public void abortTranscriber() {
         final Runnable stopASR = _stopASR.getAndSet(null);
         if (stopASR != null) {
-            try {
-                lock();
-                stopASR.run();
+            stopASR.run();
+        }
+    }
 
-            } finally {
-                unlock();
+    private void closeTranscriber() {
+        if (!_closing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final FrameCoalescer coalescer = _coalescer;
+            if (null != coalescer) {
+                // 发送尚未凑满 packet 的剩余音频
+                coalescer.flush();
             }
+            abortTranscriber();
+        } finally {
+            _state.set(TranscriberState.CLOSED);
+            _closed.complete(null);
         }
     }
 
@@ -81,15 +181,31 @@ public class ASRSession {
         _transmitData.set(null);
     }
 
-    public boolean transmit(final ByteBuffer bytes) {
-        if ( !_isTranscriptionStarted.get() || _isTranscriptionFailed.get()) {
+    public boolean transmit(final byte[] frame) {
+        if (_isTranscriptionFailed.get()) {
             return false;
         }
+        if (!_isTranscriptionStarted.get()) {
+            synchronized (_preStartFrames) {
+                if (!_isTranscriptionStarted.get()) {
+                    if (_state.get() == TranscriberState.CONNECTING) {
+                        // transcriber 连接中, 缓存音频, 待 TranscriptionStarted 后补发
+                        bufferPreStart(frame);
+                    }
+                    return false;
+                }
+            }
+        }
 
-        final Consumer<ByteBuffer> transmitter = _transmitData.get();
+        final Consumer<byte[]> transmitter = _transmitData.get();
 
         if (transmitter != null) {
-            transmitter.accept(bytes);
+            final VADGate vad = _vad;
+            if (null == vad) {
+                forward(transmitter, frame);
+            } else {
+                gateTransmit(vad, transmitter, frame);
+            }
             _transmitCount.incrementAndGet();
             return true;
         } else {
@@ -97,6 +213,117 @@ public class ASRSession {
         }
     }
 
+    private void gateTransmit(final VADGate vad, final Consumer<byte[]> transmitter, final byte[] frame) {
+        switch (vad.offer(frame)) {
+            case SPEECH -> {
+                byte[] preRoll;
+                while ((preRoll = vad.pollPreRoll()) != null) {
+                    forward(transmitter, preRoll);
+                }
+                forward(transmitter, frame);
+            }
+            case HANGOVER -> forward(transmitter, frame);
+            case COMFORT -> forward(transmitter, vad.comfortFrame(frame.length));
+            case SUPPRESS -> {
+                // 进入静音, 不再等待凑满 packet
+                final FrameCoalescer coalescer = _coalescer;
+                if (null != coalescer) {
+                    coalescer.flush();
+                }
+            }
+        }
+    }
+
+    private void forward(final Consumer<byte[]> transmitter, final byte[] frame) {
+        final FrameCoalescer coalescer = _coalescer;
+        if (null == coalescer) {
+            doTransmit(transmitter, frame);
+        } else {
+            coalescer.offer(frame);
+        }
+    }
+
+    /**
+     * batch frames into packets of packetMs before send to ASR vendor, 0 to disable
+     * @param maxHoldMs max time first frame of packet held before send
+     */
+    public void setCoalesce(final int packetMs, final long maxHoldMs, final ScheduledExecutorService timer) {
+        _coalescer = packetMs > 0 ? new FrameCoalescer(packetMs * bytesPerMs(), maxHoldMs, timer, packet -> {
+            final Consumer<byte[]> transmitter = _transmitData.get();
+            if (null != transmitter) {
+                doTransmit(transmitter, packet);
+            }
+        }) : null;
+    }
+
+    /**
+     * enable local vad gate in front of ASR vendor, null to disable
+     */
+    public void setVAD(final VADGate.Config config) {
+        _vad = null != config ? new VADGate(config) : null;
+    }
+
+    /**
+     * codec negotiated at handshake, ingress decoded into L16 before transmit, egress encoded before send
+     */
+    public void setCodec(final AudioCodec codec) {
+        _codec = codec;
+    }
+
+    public AudioCodec codec() {
+        return _codec;
+    }
+
+    protected void doTransmit(final Consumer<byte[]> transmitter, final byte[] frame) {
+        transmitter.accept(frame);
+    }
+
+    private void bufferPreStart(final byte[] frame) {
+        final int maxBytes = _preStartBufferMs * bytesPerMs();
+        _preStartFrames.addLast(frame);
+        _preStartBytes += frame.length;
+        _preStartBufferedMs.addAndGet(frame.length / bytesPerMs());
+        // ring buffer: 超出容量时丢弃最早的音频
+        while (_preStartBytes > maxBytes && !_preStartFrames.isEmpty()) {
+            final byte[] dropped = _preStartFrames.pollFirst();
+            _preStartBytes -= dropped.length;
+            _preStartBufferedMs.addAndGet(-dropped.length / bytesPerMs());
+            _preStartDroppedMs.addAndGet(dropped.length / bytesPerMs());
+        }
+    }
+
+    /**
+     * @return sample rate of 16bit mono audio sent to ASR
+     */
+    public int asrSampleRate() {
+        return 8000;
+    }
+
+    protected int bytesPerMs() {
+        return asrSampleRate() / 1000 * 2;
+    }
+
+    /**
+     * @param preStartBufferMs max audio (in ms) buffered while transcriber connecting, 0 means disable
+     */
+    public void setPreStartBufferMs(final int preStartBufferMs) {
+        _preStartBufferMs = preStartBufferMs;
+    }
+
+    /**
+     * @return audio (in ms) buffered before TranscriptionStarted and flushed to transcriber
+     */
+    public long preStartBufferedMs() {
+        return _preStartBufferedMs.get();
+    }
+
+    /**
+     * @return audio (in ms) dropped because pre-start buffer full
+     */
+    public long preStartDroppedMs() {
+        return _preStartDroppedMs.get();
+    }
+
     public int transmitCount() {
         return _transmitCount.get();
     }
@@ -112,31 +339,65 @@ public class ASRSession {
         if (future != null) {
             future.cancel(false);
         }
-        log.info("{} 's ASRSession close(), lasted: {} s, check idle {} times",
-                _sessionId, (System.currentTimeMillis() - _sessionBeginInMs) / 1000.0f, _checkIdleCount.get());
+        log.info("{} 's ASRSession close(), lasted: {} s, check idle {} times, pre-start buffered: {} ms, dropped: {} ms{}{}",
+                _sessionId, (System.currentTimeMillis() - _sessionBeginInMs) / 1000.0f, _checkIdleCount.get(),
+                _preStartBufferedMs.get(), _preStartDroppedMs.get(),
+                null != _vad ? ", " + _vad : "", null != _coalescer ? ", " + _coalescer : "");
     }
 
     public SpeechTranscriber onSpeechTranscriberCreated(final SpeechTranscriber speechTranscriber) {
         return speechTranscriber;
     }
 
-    public void setASR(final Runnable stopASR, final Consumer<ByteBuffer> transmitData) {
+    /**
+     * begin new start attempt (failover may try several providers), callbacks of earlier attempts become stale
+     * @return id of the attempt, checked by vendor callbacks via isCurrentAttempt
+     */
+    public int nextAttempt() {
+        return _attempt.incrementAndGet();
+    }
+
+    public boolean isCurrentAttempt(final int attempt) {
+        return _attempt.get() == attempt;
+    }
+
+    public void setASR(final Runnable stopASR, final Consumer<byte[]> transmitData) {
+        // 可能为 failover 后的新识别, 清除前一次识别的失败状态
+        _isTranscriptionFailed.set(false);
+        final FrameCoalescer coalescer = _coalescer;
+        if (null != coalescer) {
+            coalescer.reset();
+        }
         _stopASR.set(stopASR);
         _transmitData.set(transmitData);
     }
 
     String _sessionId;
-    final Lock _lock = new ReentrantLock();
 
     AtomicReference<Runnable> _stopASR = new AtomicReference<>(null);
-    AtomicReference<Consumer<ByteBuffer>> _transmitData = new AtomicReference<>(null);
+    AtomicReference<Consumer<byte[]>> _transmitData = new AtomicReference<>(null);
 
-    final AtomicBoolean _isStartTranscription = new AtomicBoolean(false);
+    final AtomicReference<TranscriberState> _state = new AtomicReference<>(TranscriberState.IDLE);
+    final AtomicBoolean _closing = new AtomicBoolean(false);
+    final CompletableFuture<Void> _closed = new CompletableFuture<>();
     final AtomicBoolean _isTranscriptionStarted = new AtomicBoolean(false);
     final AtomicBoolean _isTranscriptionFailed = new AtomicBoolean(false);
     final AtomicInteger _transmitCount = new AtomicInteger(0);
+    final AtomicInteger _attempt = new AtomicInteger(0);
 
     final AtomicReference<ScheduledFuture<?>>   _checkIdleFuture = new AtomicReference<>(null);
+
+    // guarded by itself
+    final Deque<byte[]> _preStartFrames = new ArrayDeque<>();
+    int _preStartBytes = 0;
+    volatile int _preStartBufferMs = 1000;
+
+    // accessed by ingress thread only
+    volatile VADGate _vad = null;
+    volatile FrameCoalescer _coalescer = null;
+    volatile AudioCodec _codec = AudioCodec.L16;
+    final AtomicLong _preStartBufferedMs = new AtomicLong(0);
+    final AtomicLong _preStartDroppedMs = new AtomicLong(0);
     final AtomicInteger _checkIdleCount = new AtomicInteger(0);
     final long _sessionBeginInMs;
 }
@@ -7,6 +7,7 @@ import com.mgnt.utils.StringUnicodeEncoderDecoder;
 import com.yulore.medhub.api.*;
 import com.yulore.medhub.stream.VarsUtil;
 import com.yulore.medhub.task.PlayStreamPCMTask;
+import com.yulore.medhub.vad.BargeInDetector;
 import com.yulore.medhub.vo.*;
 import com.yulore.util.ByteArrayListInputStream;
 import com.yulore.util.WaveUtil;
@@ -19,11 +20,12 @@ import org.java_websocket.WebSocket;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
@@ -122,19 +124,72 @@ public class CallSession extends ASRSession {
     }
 
     @Override
-    public boolean transmit(final ByteBuffer bytes) {
-        final boolean result = super.transmit(bytes);
+    public int asrSampleRate() {
+        return 16000;
+    }
+
+    @Override
+    public boolean transmit(final byte[] frame) {
+        final boolean result = super.transmit(frame);
 
-        final byte[] srcBytes = new byte[bytes.remaining()];
-        bytes.get(srcBytes, 0, srcBytes.length);
         if (_recordStartTimestamp.compareAndSet(0, 1)) {
             _recordStartTimestamp.set(System.currentTimeMillis());
         }
-        _usBufs.add(srcBytes);
+        // frame is read-only shared with ASR forwarder, record without copy
+        _usBufs.add(frame);
 
+        checkBargeIn(frame);
         return result;
     }
 
+    /**
+     * enable local barge-in detection for cancel_on_speak reply, null to disable (wait for vendor's SentenceBegin)
+     */
+    public void setBargeIn(final BargeInDetector.Config config) {
+        _bargeIn = null != config ? new BargeInDetector(config) : null;
+    }
+
+    private void checkBargeIn(final byte[] frame) {
+        final BargeInDetector detector = _bargeIn;
+        if (null == detector) {
+            return;
+        }
+        final PlaybackSession playback = _playback.get();
+        if (null == playback || !playback.isPlaying() || !isCancelOnSpeak()) {
+            detector.reset();
+            return;
+        }
+        if (detector.offer(frame)) {
+            cancelPlayback(playback, "local", detector.onsetInNanos());
+        }
+    }
+
+    private boolean isCancelOnSpeak() {
+        final AIReplyVO reply = _lastReply;
+        return reply != null && reply.getCancel_on_speak() != null && reply.getCancel_on_speak();
+    }
+
+    /**
+     * @param onsetInNanos 0 means unknown, not counted into reaction time
+     */
+    private void cancelPlayback(final PlaybackSession playback, final String by, final long onsetInNanos) {
+        final PlayStreamPCMTask task = playback.stopCurrent();
+        if (task != null && onsetInNanos == 0) {
+            log.info("[{}]: barge-in by {}: cancel playback {}", _sessionId, by, task);
+        } else if (task != null) {
+            // reaction: from caller's speech onset to playback task stopped (no more frame sent after)
+            final long reactionInUs = (System.nanoTime() - onsetInNanos) / 1000;
+            _bargeInCount.incrementAndGet();
+            _bargeInReactionUs.addAndGet(reactionInUs);
+            log.info("[{}]: barge-in by {}: cancel playback {} in {} us after speech onset, total: {}/avg: {} us",
+                    _sessionId, by, task, reactionInUs, _bargeInCount.get(), _bargeInReactionUs.get() / _bargeInCount.get());
+        }
+    }
+
+    public int bargeInCount() {
+        return _bargeInCount.get();
+    }
+
     public void notifyPlaybackSendStart(final long startTimestamp) {
         if (!_currentPS.compareAndSet(null, new PlaybackSegment(startTimestamp))) {
             log.warn("[{}]: notifyPlaybackSendStart: current PlaybackSegment is !NOT! null", _sessionId);
@@ -146,6 +201,7 @@ public class CallSession extends ASRSession {
     public void notifyPlaybackSendStop(final long stopTimestamp) {
         final PlaybackSegment ps = _currentPS.getAndSet(null);
         if (ps != null) {
+            ps.trim();
             _dsBufs.add(ps);
             log.info("[{}]: notifyPlaybackSendStop: move current PlaybackSegment to _dsBufs", _sessionId);
         } else {
@@ -153,10 +209,13 @@ public class CallSession extends ASRSession {
         }
     }
 
-    public void notifyPlaybackSendData(final byte[] bytes) {
+    /**
+     * @param frame heap buffer only valid during call (reused by playback task), copied into segment's blocks
+     */
+    public void notifyPlaybackSendData(final ByteBuffer frame) {
         final PlaybackSegment ps = _currentPS.get();
         if (ps != null) {
-            ps._data.add(bytes);
+            ps.append(frame);
         } else {
             log.warn("[{}]: notifyPlaybackSendData: current PlaybackSegment is null", _sessionId);
         }
@@ -166,7 +225,10 @@ public class CallSession extends ASRSession {
     public void notifySentenceBegin(final PayloadSentenceBegin payload) {
         super.notifySentenceBegin(payload);
         _isUserSpeak.set(true);
-        if (_playback.get() != null && _lastReply != null && _lastReply.getPause_on_speak() != null && _lastReply.getPause_on_speak()) {
+        if (_playback.get() != null && isCancelOnSpeak()) {
+            // local detector disabled or missed, cancel by vendor's SentenceBegin
+            cancelPlayback(_playback.get(), "asr", 0);
+        } else if (_playback.get() != null && _lastReply != null && _lastReply.getPause_on_speak() != null && _lastReply.getPause_on_speak()) {
             _playback.get().pauseCurrent();
         }
     }
@@ -203,7 +265,13 @@ public class CallSession extends ASRSession {
     }
 
     public void notifyPlaybackStop(final PlayStreamPCMTask task) {
-        if (_lastReply != null && _lastReply.getHangup() == 1) {
+        if (!task.isCompleted()) {
+            // cancelled (eg: barge-in) or replaced by next reply, reply not fully played, never hangup
+            log.info("[{}]: playback {} stopped before completed, skip hangup check", _sessionId, task);
+            return;
+        }
+        final AIReplyVO reply = _lastReply;
+        if (reply != null && reply.getHangup() == 1) {
             // hangup call
             _doHangup.run();
         }
@@ -362,13 +430,17 @@ public class CallSession extends ASRSession {
     private final Runnable _doHangup;
     private final String _bucket;
     private final String _wavPath;
-    private AIReplyVO _lastReply;
+    // written by mailbox/idle check, read by playback & asr callbacks
+    private volatile AIReplyVO _lastReply;
     private AiSettingVO _aiSetting;
 
     private Consumer<String> _playbackOn;
     private final AtomicReference<PlaybackSession> _playback = new AtomicReference<>(null);
     private final AtomicLong _idleStartInMs = new AtomicLong(System.currentTimeMillis());
     private final AtomicBoolean _isUserSpeak = new AtomicBoolean(false);
+    private volatile BargeInDetector _bargeIn = null;
+    private final AtomicInteger _bargeInCount = new AtomicInteger(0);
+    private final AtomicLong _bargeInReactionUs = new AtomicLong(0);
 
     private static final ConcurrentMap<String, CallSession> _callSessions = new ConcurrentHashMap<>();
 
@@ -376,8 +448,38 @@ public class CallSession extends ASRSession {
 
     @RequiredArgsConstructor
     private static class PlaybackSegment {
+        // ~1 second of 16K/16bit pcm per block, instead of retaining each 20 ms frame
+        private static final int BLOCK_SIZE = 32 * 1024;
+
         final long timestamp;
-        final List<byte[]> _data = new LinkedList<>();
+        final List<byte[]> _data = new ArrayList<>();
+        private int _lastUsed = BLOCK_SIZE;
+
+        void append(final ByteBuffer frame) {
+            final byte[] src = frame.array();
+            int off = frame.arrayOffset() + frame.position();
+            int left = frame.remaining();
+            while (left > 0) {
+                if (_lastUsed == BLOCK_SIZE) {
+                    _data.add(new byte[BLOCK_SIZE]);
+                    _lastUsed = 0;
+                }
+                final int size = Math.min(left, BLOCK_SIZE - _lastUsed);
+                System.arraycopy(src, off, _data.get(_data.size() - 1), _lastUsed, size);
+                _lastUsed += size;
+                off += size;
+                left -= size;
+            }
+        }
+
+        // ByteArrayListInputStream read whole blocks, so cut unused tail of last block
+        void trim() {
+            if (!_data.isEmpty() && _lastUsed < BLOCK_SIZE) {
+                final int last = _data.size() - 1;
+                _data.set(last, Arrays.copyOf(_data.get(last), _lastUsed));
+                _lastUsed = BLOCK_SIZE;
+            }
+        }
     }
     private final AtomicReference<PlaybackSegment> _currentPS = new AtomicReference<>(null);
     private final List<PlaybackSegment> _dsBufs = new ArrayList<>();
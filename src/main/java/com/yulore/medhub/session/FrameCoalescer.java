@@ -0,0 +1,103 @@
+package com.yulore.medhub.session;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * batch small ASR uplink frames (usually 20 ms) into larger packets before sending to vendor SDK:
+ *  packet flushed when reach packetBytes, or when first frame in packet held longer than maxHoldMs.
+ *  each flushed packet is a new byte[], SDK may keep reference of it after send.
+ *  sink called while holding the lock, so packets flushed by timer and by ingress thread keep audio order.
+ */
+@Slf4j
+public class FrameCoalescer {
+    public FrameCoalescer(final int packetBytes,
+                          final long maxHoldMs,
+                          final ScheduledExecutorService timer,
+                          final Consumer<byte[]> sink) {
+        _packetBytes = packetBytes;
+        _maxHoldMs = maxHoldMs;
+        _timer = timer;
+        _sink = sink;
+        _pending = new byte[packetBytes];
+    }
+
+    public void offer(final byte[] frame) {
+        synchronized (this) {
+            _frameCount++;
+            if (_pendingLen + frame.length > _pending.length) {
+                // frame larger than expected, grow pending buffer
+                final byte[] grown = new byte[_pendingLen + frame.length];
+                System.arraycopy(_pending, 0, grown, 0, _pendingLen);
+                _pending = grown;
+            }
+            System.arraycopy(frame, 0, _pending, _pendingLen, frame.length);
+            _pendingLen += frame.length;
+            if (_pendingLen >= _packetBytes) {
+                _sink.accept(drain());
+            } else if (_pendingLen == frame.length && null != _timer) {
+                // first frame of packet, flush it after max hold time at most
+                final long seq = _packetSeq;
+                _timer.schedule(()->flushIfSame(seq), _maxHoldMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * send pending frames immediately, eg: silence begin or transcriber stopping
+     */
+    public synchronized void flush() {
+        if (_pendingLen > 0) {
+            _sink.accept(drain());
+        }
+    }
+
+    /**
+     * drop pending frames without send, eg: transcriber replaced by failover
+     */
+    public synchronized void reset() {
+        if (_pendingLen > 0) {
+            log.info("drop {} bytes coalesced for replaced transcriber", _pendingLen);
+        }
+        _pendingLen = 0;
+        // pending max hold timer become no-op
+        _packetSeq++;
+    }
+
+    private synchronized void flushIfSame(final long seq) {
+        if (seq == _packetSeq && _pendingLen > 0) {
+            try {
+                _sink.accept(drain());
+            } catch (Exception ex) {
+                log.warn("flush coalesced packet failed: {}", ex.toString());
+            }
+        }
+    }
+
+    private byte[] drain() {
+        final byte[] packet = new byte[_pendingLen];
+        System.arraycopy(_pending, 0, packet, 0, _pendingLen);
+        _pendingLen = 0;
+        _packetSeq++;
+        _packetCount++;
+        return packet;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("coalesce(frames:%d/packets:%d)", _frameCount, _packetCount);
+    }
+
+    private final int _packetBytes;
+    private final long _maxHoldMs;
+    private final ScheduledExecutorService _timer;
+    private final Consumer<byte[]> _sink;
+    private byte[] _pending;
+    private int _pendingLen = 0;
+    private long _packetSeq = 0;
+    private long _frameCount = 0;
+    private long _packetCount = 0;
+}
@@ -1,11 +1,11 @@
 package com.yulore.medhub.session;
 
+import com.yulore.medhub.task.PCMView;
 import com.yulore.medhub.task.PlayPCMTask;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
-import java.nio.ByteBuffer;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -28,23 +28,12 @@ public class MediaSession extends ASRSession {
         _sessionId = sessionId;
     }
 
-    public boolean transmit(final ByteBuffer bytes) {
-        if ( !_isTranscriptionStarted.get() || _isTranscriptionFailed.get()) {
-            return false;
-        }
-
-        final Consumer<ByteBuffer> transmitter = _transmitData.get();
-
-        if (transmitter != null) {
-            if (_delayExecutor == null) {
-                transmitter.accept(bytes);
-            } else {
-                _delayExecutor.schedule(()->transmitter.accept(bytes), _testDelayMs, TimeUnit.MILLISECONDS);
-            }
-            _transmitCount.incrementAndGet();
-            return true;
+    @Override
+    protected void doTransmit(final Consumer<byte[]> transmitter, final byte[] frame) {
+        if (_delayExecutor == null) {
+            transmitter.accept(frame);
         } else {
-            return false;
+            _delayExecutor.schedule(()->transmitter.accept(frame), _testDelayMs, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -57,8 +46,9 @@ public class MediaSession extends ASRSession {
         if (future != null) {
             future.cancel(false);
         }
-        log.info("{} 's MediaSession close(), lasted: {} s, check idle {} times",
-                _sessionId, (System.currentTimeMillis() - _sessionBeginInMs) / 1000.0f, _checkIdleCount.get());
+        log.info("{} 's MediaSession close(), lasted: {} s, check idle {} times, pre-start buffered: {} ms, {}, {}",
+                _sessionId, (System.currentTimeMillis() - _sessionBeginInMs) / 1000.0f, _checkIdleCount.get(),
+                _preStartBufferedMs.get(), _vad, _coalescer);
     }
 
     public void stopCurrentAndStartPlay(final PlayPCMTask current) {
@@ -100,13 +90,16 @@ public class MediaSession extends ASRSession {
         }
     }
 
-    public int addPlaybackStream(final byte[] bytes) {
+    /**
+     * @param view decoded once, replayed (and seek) by id without decode again
+     */
+    public int addPlaybackStream(final PCMView view) {
         final int id = _playbackId.incrementAndGet();
-        _id2stream.put(id, bytes);
+        _id2stream.put(id, view);
         return id;
     }
 
-    public byte[] getPlaybackStream(final int id) {
+    public PCMView getPlaybackStream(final int id) {
         return _id2stream.get(id);
     }
 
@@ -118,5 +111,5 @@ public class MediaSession extends ASRSession {
     final AtomicBoolean _isPlaying = new AtomicBoolean(false);
     final AtomicReference<PlayPCMTask> _playingTask = new AtomicReference<>(null);
     final AtomicInteger _playbackId = new AtomicInteger(0);
-    final ConcurrentMap<Integer, byte[]> _id2stream = new ConcurrentHashMap<>();
+    final ConcurrentMap<Integer, PCMView> _id2stream = new ConcurrentHashMap<>();
 }
@@ -1,14 +1,14 @@
 package com.yulore.medhub.session;
 
+import com.yulore.medhub.stream.BuildStreamTask;
 import com.yulore.medhub.task.PlayStreamPCMTask;
+import com.yulore.util.AudioCodec;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 @ToString
 @Slf4j
@@ -22,14 +22,6 @@ public class PlaybackSession {
         return _sessionId;
     }
 
-    public void lock() {
-        _lock.lock();
-    }
-
-    public void unlock() {
-        _lock.unlock();
-    }
-
     public void notifyPlaybackStart(final PlayStreamPCMTask task) {
         if (_playingTask.get() == task) {
             _isPlaying.set(true);
@@ -41,6 +33,7 @@ public class PlaybackSession {
 
     public void notifyPlaybackStop(final PlayStreamPCMTask task) {
         if (_playingTask.compareAndSet(task, null)) {
+            _playingStream.set(null);
             _isPlaying.set(false);
             _idleStartInMs.set(System.currentTimeMillis());
         } else if (_playingTask.get() != null) {
@@ -49,6 +42,14 @@ public class PlaybackSession {
         }
     }
 
+    public void setCodec(final AudioCodec codec) {
+        _codec = codec;
+    }
+
+    public AudioCodec codec() {
+        return _codec;
+    }
+
     public boolean isPlaying() {
         return _isPlaying.get();
     }
@@ -57,13 +58,15 @@ public class PlaybackSession {
         return _idleStartInMs.get();
     }
 
-    public void attach(final PlayStreamPCMTask current) {
-        final PlayStreamPCMTask previous = _playingTask.getAndSet(null);
-        if (previous != null) {
-            previous.stop();
-        }
+    /**
+     * @param stream source of current task, cancelled when current task stopped before completed
+     */
+    public void attach(final PlayStreamPCMTask current, final BuildStreamTask stream) {
+        stopCurrent();
         if (!_playingTask.compareAndSet(null, current)) {
             log.warn("attach {} failed, another task has attached", current);
+        } else {
+            _playingStream.set(stream);
         }
     }
 
@@ -77,11 +80,23 @@ public class PlaybackSession {
     }
     */
 
-    public void stopCurrent() {
+    /**
+     * stop current task and cancel its in-flight stream generation (eg: tts), release agent slot
+     * @return stopped task, null if no playing task
+     */
+    public PlayStreamPCMTask stopCurrent() {
         final PlayStreamPCMTask current = _playingTask.getAndSet(null);
+        final BuildStreamTask stream = _playingStream.getAndSet(null);
         if (current != null) {
             current.stop();
+            // notifyPlaybackStop can't match current task any more
+            _isPlaying.set(false);
+            _idleStartInMs.set(System.currentTimeMillis());
+            if (stream != null && !current.isCompleted()) {
+                stream.cancel();
+            }
         }
+        return current;
     }
 
     public void pauseCurrent() {
@@ -104,10 +119,11 @@ public class PlaybackSession {
     }
 
     private final String _sessionId;
-    private final Lock _lock = new ReentrantLock();
 
     final AtomicBoolean _isPlaying = new AtomicBoolean(false);
     final AtomicLong _idleStartInMs = new AtomicLong(System.currentTimeMillis());
     final AtomicReference<PlayStreamPCMTask> _playingTask = new AtomicReference<>(null);
+    final AtomicReference<BuildStreamTask> _playingStream = new AtomicReference<>(null);
+    volatile AudioCodec _codec = AudioCodec.L16;
     final long _sessionBeginInMs;
 }
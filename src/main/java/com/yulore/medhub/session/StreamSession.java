@@ -2,20 +2,21 @@ package com.yulore.medhub.session;
 
 import com.yulore.medhub.stream.VarsUtil;
 import com.yulore.util.ByteArrayListInputStream;
+import com.yulore.util.ChunkedBuffer;
 import lombok.AllArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+/**
+ * state of one rms stream, confined to its ws connection's serial mailbox (commands & appended data),
+ *  so no lock needed
+ */
 @Slf4j
 @ToString(of={"_sessionId", "_contentId", "_playIdx"})
 public class StreamSession {
@@ -84,7 +85,7 @@ public class StreamSession {
             }
 
             final String objectName = _path.substring(braceEnd + 1);
-            _doUpload.accept(new UploadToOSSContext(bucketName, objectName, new ByteArrayListInputStream(_bufs)));
+            _doUpload.accept(new UploadToOSSContext(bucketName, objectName, new ByteArrayListInputStream(_chunks.chunks())));
         }
     }
 
@@ -100,71 +101,91 @@ public class StreamSession {
         _doSendData.accept(new DataContext(data, startInMs, this));
     }
 
-    public void lock() {
-        _lock.lock();
-        // log.info("lock session: {}", _lock);
-    }
-
-    public void unlock() {
-        // log.info("unlock session: {}", _lock);
-        _lock.unlock();
-    }
-
     public boolean streaming() {
-        try {
-            _lock.lock();
-            return _streaming;
-        } finally {
-            _lock.unlock();
-        }
+        return _streaming;
     }
 
-    public InputStream genInputStream() {
-        final InputStream is = new ByteArrayListInputStream(_bufs);
-        try {
-            is.skip(_pos);
-        } catch (IOException ignored) {
-        }
-        return is;
+    /**
+     * read up to count bytes from current pos and move pos forward
+     * @return zero-copy slice when inside one chunk (valid until rewritten), empty if no more data
+     */
+    public ByteBuffer read(final int count) {
+        final ByteBuffer data = _chunks.read(_pos, count);
+        _pos += data.remaining();
+        return data;
     }
 
     public boolean needMoreData(final int count4read) {
-        try {
-            _lock.lock();
-            return _streaming && _pos + count4read > _length;
-        } finally {
-            _lock.unlock();
-        }
+        return _streaming && _pos + count4read > _chunks.length();
     }
 
     public int length() {
-        try {
-            _lock.lock();
-            return _streaming ? Integer.MAX_VALUE : _length;
-        } finally {
-            _lock.unlock();
-        }
+        return _streaming ? Integer.MAX_VALUE : _chunks.length();
     }
 
+    /**
+     * @return position consumed by client: in push mode, pushed but not credited back bytes excluded
+     *  (_pos is push cursor), so FileTell / SEEK_CUR see client's read position
+     */
     public int tell() {
-        try {
-            _lock.lock();
-            return _pos;
-        } finally {
-            _lock.unlock();
-        }
+        return _pushWindow > 0 ? _pos - (_pushWindow - _credit) : _pos;
     }
 
     public int seekFromStart(final int pos) {
-        try {
-            _lock.lock();
-            _pos = pos;
-            if (_isWrite && _pos > _length) {
-                _pos = _length;
+        _pos = pos;
+        if (_isWrite && _pos > _chunks.length()) {
+            _pos = _chunks.length();
+        }
+        if (_pushWindow > 0) {
+            // client drop pushed data received before FileSeekResult, so whole window available again
+            _credit = _pushWindow;
+            _eofPushed = false;
+        }
+        return _pos;
+    }
+
+    /**
+     * enable read-ahead push mode: sequential data from pos pushed as binary frames (up to chunk bytes each)
+     *  without FileRead, bounded by credit of window bytes; client return credit (FileCredit) after consumed,
+     *  end of stream pushed as empty frame. pos then means next byte to push.
+     */
+    public void enablePush(final int window, final int chunk) {
+        _pushWindow = window;
+        _pushChunk = chunk;
+        _credit = window;
+    }
+
+    public boolean pushing() {
+        return _pushWindow > 0;
+    }
+
+    public void addCredit(final int bytes) {
+        // sum in long, huge credit from client must not overflow into negative
+        _credit = (int) Math.min(_pushWindow, (long) _credit + Math.max(0, bytes));
+        push(System.currentTimeMillis());
+    }
+
+    /**
+     * push available data within credit, wait for appendData / credit if none
+     */
+    public void push(final long startInMs) {
+        if (_pushWindow <= 0 || _eofPushed) {
+            return;
+        }
+        while (_credit > 0) {
+            final ByteBuffer data = read(Math.min(_pushChunk, _credit));
+            if (data.hasRemaining()) {
+                _credit -= data.remaining();
+                _pushedBytes += data.remaining();
+                sendData(startInMs, data);
+            } else {
+                if (!_streaming) {
+                    _eofPushed = true;
+                    sendData(startInMs, ByteBuffer.allocate(0));
+                    log.info("[{}]: push eof at pos: {}, pushed {} bytes total", _sessionId, _pos, _pushedBytes);
+                }
+                return;
             }
-            return _pos;
-        } finally {
-            _lock.unlock();
         }
     }
 
@@ -173,24 +194,15 @@ public class StreamSession {
     }
 
     public void appendData(final byte[] bytes) {
-        try {
-            _lock.lock();
-            _bufs.add(bytes);
-            _length += bytes.length;
-            callOnDataChanged();
-        } finally {
-            _lock.unlock();
-        }
+        _chunks.append(bytes);
+        callOnDataChanged();
+        push(System.currentTimeMillis());
     }
 
     public void appendCompleted() {
-        try {
-            _lock.lock();
-            _streaming = false;
-            callOnDataChanged();
-        } finally {
-            _lock.unlock();
-        }
+        _streaming = false;
+        callOnDataChanged();
+        push(System.currentTimeMillis());
     }
 
     private void callOnDataChanged() {
@@ -205,84 +217,39 @@ public class StreamSession {
         final byte[] srcBytes = new byte[bytes.remaining()];
         bytes.get(srcBytes, 0, srcBytes.length);
 
-        try {
-            _lock.lock();
-            if (_pos >= _length) {
-                log.info("[{}]: writeToStream for pos: {} >= length: {}, append data {} bytes directly",
-                        _sessionId, _pos, _length, srcBytes.length);
-                // append data on the end
-                doAppendBytes(srcBytes);
-                log.info("[{}]: writeToStream => doAppendBytes: pos: {}/length: {}", _sessionId, _pos, _length);
-                return srcBytes.length;
-            }
-
-            log.info("[{}]: writeToStream for pos: {} < length: {}, need rewrite exist bufs {} bytes",
-                    _sessionId, _pos, _length, srcBytes.length);
-            // copy some data to exist bytesList
-            int posInBuf = 0, idxOfBuf = 0, off = 0;
-            byte[] curBuf;
-            for (; idxOfBuf < _bufs.size(); idxOfBuf++) {
-                curBuf = _bufs.get(idxOfBuf);
-                if (off + curBuf.length > _pos) {
-                    posInBuf = _pos - off;
-                    break;
-                }
-                off += curBuf.length;
-            }
-            log.info("[{}]: writeToStream re-write: idxOfBuf:{}/posInBuf:{}", _sessionId, idxOfBuf, posInBuf);
-
-            final int leftToWrite = writeToExistBufs(srcBytes, idxOfBuf, posInBuf);
-
-            log.info("[{}]: writeToStream => writeToExistBufs: leftToWrite: {}", _sessionId, leftToWrite);
+        if (_pos >= _chunks.length()) {
+            log.info("[{}]: writeToStream for pos: {} >= length: {}, append data {} bytes directly",
+                    _sessionId, _pos, _chunks.length(), srcBytes.length);
+            // append data on the end
+            doAppendBytes(srcBytes);
+            log.info("[{}]: writeToStream => doAppendBytes: pos: {}/length: {}", _sessionId, _pos, _chunks.length());
+            return srcBytes.length;
+        }
 
-            // write to end of stream
-            if (leftToWrite > 0) {
-                // and has data to write, so append at the end of stream
-                final byte[] leftBytes = new byte[leftToWrite];
-                System.arraycopy(srcBytes, srcBytes.length - leftToWrite, leftBytes, 0, leftToWrite);
-                doAppendBytes(leftBytes);
-                log.info("[{}]: writeToStream => doAppendBytes: pos: {}/length: {}", _sessionId, _pos, _length);
-                return srcBytes.length;
-            }
-        } finally {
-            _lock.unlock();
+        log.info("[{}]: writeToStream for pos: {} < length: {}, need rewrite exist bufs {} bytes",
+                _sessionId, _pos, _chunks.length(), srcBytes.length);
+        // rewrite exist chunks in place, chunk of pos located by binary search on offset index
+        final int rewritten = _chunks.overwrite(_pos, srcBytes, 0, srcBytes.length);
+        _pos += rewritten;
+        final int leftToWrite = srcBytes.length - rewritten;
+
+        log.info("[{}]: writeToStream => rewritten: {}/leftToWrite: {}", _sessionId, rewritten, leftToWrite);
+
+        // write to end of stream
+        if (leftToWrite > 0) {
+            // and has data to write, so append at the end of stream
+            final byte[] leftBytes = new byte[leftToWrite];
+            System.arraycopy(srcBytes, srcBytes.length - leftToWrite, leftBytes, 0, leftToWrite);
+            doAppendBytes(leftBytes);
+            log.info("[{}]: writeToStream => doAppendBytes: pos: {}/length: {}", _sessionId, _pos, _chunks.length());
+            return srcBytes.length;
         }
         return srcBytes.length;
     }
 
     private void doAppendBytes(final byte[] bytes) {
-        _bufs.add(bytes);
+        _chunks.append(bytes);
         _pos += bytes.length;
-        _length += bytes.length;
-    }
-
-    private int writeToExistBufs(final byte[] bytesArray, int idxOfBuf, int posInBuf) {
-        int leftLen = bytesArray.length, writeSize = leftLen;
-        while (idxOfBuf < _bufs.size()) {
-            final byte[] curBuf = _bufs.get(idxOfBuf);
-
-            if (posInBuf < curBuf.length) {
-                if (posInBuf + writeSize > curBuf.length) {
-                    writeSize = curBuf.length - posInBuf;
-                }
-
-                System.arraycopy(bytesArray, bytesArray.length - leftLen, curBuf, posInBuf, writeSize);
-                // off += readSize;
-                posInBuf += writeSize;
-                _pos += writeSize;
-                leftLen -= writeSize;
-                writeSize = leftLen;
-                if (leftLen == 0) {
-                    // data for write has been full-written
-                    break;
-                }
-            }
-            else {
-                idxOfBuf++;
-                posInBuf = 0;
-            }
-        }
-        return leftLen;
     }
 
     final private boolean _isWrite;
@@ -294,11 +261,16 @@ public class StreamSession {
     final private Consumer<DataContext> _doSendData;
     final private Consumer<UploadToOSSContext> _doUpload;
 
-    private int _length = 0;
     private int _pos = 0;
     private boolean _streaming = true;
 
-    final List<byte[]> _bufs = new ArrayList<>();
-    private final Lock _lock = new ReentrantLock();
+    // push mode, _pushWindow == 0 means disabled
+    private int _pushWindow = 0;
+    private int _pushChunk = 0;
+    private int _credit = 0;
+    private boolean _eofPushed = false;
+    private long _pushedBytes = 0;
+
+    final ChunkedBuffer _chunks = new ChunkedBuffer();
     private Function<StreamSession, Boolean> _onDataChanged = null;
 }
@@ -5,4 +5,10 @@ import java.util.function.Consumer;
 public interface BuildStreamTask {
     public String key();
     void buildStream(Consumer<byte[]> onPart, Consumer<Boolean> onCompleted);
+
+    /**
+     * abandon in-flight generation (eg: barge-in) and release its agent slot, onPart not called after cancel
+     */
+    default void cancel() {
+    }
 }
@@ -63,8 +63,18 @@ public class CompositeStreamTask implements BuildStreamTask {
 
     public void doBuildStream(final Consumer<byte[]> onPart, final Consumer<Boolean> onCompleted) {
         while (!_cvos.isEmpty()) {
+            if (_cancelled) {
+                onCompleted.accept(false);
+                return;
+            }
             final BuildStreamTask bst = _cvo2bst.apply(_cvos.remove(0));
             if (bst != null) {
+                _current = bst;
+                if (_cancelled) {
+                    // cancel() called before _current set
+                    onCompleted.accept(false);
+                    return;
+                }
                 bst.buildStream(onPart, (isOK) -> doBuildStream(onPart, onCompleted));
                 return;
             }
@@ -72,6 +82,18 @@ public class CompositeStreamTask implements BuildStreamTask {
         onCompleted.accept(true);
     }
 
+    /**
+     * cancel current part and skip the rest parts
+     */
+    @Override
+    public void cancel() {
+        _cancelled = true;
+        final BuildStreamTask current = _current;
+        if (null != current) {
+            current.cancel();
+        }
+    }
+
     static private byte[] genWaveHeader() {
         final ByteArrayOutputStream bos = new ByteArrayOutputStream();
         final DataOutputStream dos = new DataOutputStream(bos);
@@ -184,4 +206,6 @@ public class CompositeStreamTask implements BuildStreamTask {
     private final boolean _removeWavHdr;
     private final List<CompositeVO> _cvos = new ArrayList<>();
     private final Function<CompositeVO, BuildStreamTask> _cvo2bst;
+    private volatile boolean _cancelled = false;
+    private volatile BuildStreamTask _current = null;
 }
@@ -7,10 +7,12 @@ import com.google.common.base.Charsets;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import com.mgnt.utils.StringUnicodeEncoderDecoder;
+import com.yulore.medhub.nls.AgentLease;
 import com.yulore.medhub.nls.CosyAgent;
 import lombok.extern.slf4j.Slf4j;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -19,7 +21,7 @@ import java.util.function.Supplier;
 public class CosyStreamTask implements BuildStreamTask {
     final HashFunction _MD5 = Hashing.md5();
 
-    public CosyStreamTask(final String path, final Supplier<CosyAgent> getCosyAgent,final Consumer<StreamInputTts> onSynthesizer) {
+    public CosyStreamTask(final String path, final Supplier<AgentLease<CosyAgent>> getCosyAgent,final Consumer<StreamInputTts> onSynthesizer) {
         _getCosyAgent = getCosyAgent;
         _onSynthesizer = onSynthesizer;
         // eg: {type=cosy,voice=xxx,url=ws://172.18.86.131:6789/cosy,vars_playback_id=<uuid>,content_id=2088788,vars_start_timestamp=1732028219711854}
@@ -72,10 +74,13 @@ public class CosyStreamTask implements BuildStreamTask {
 
     @Override
     public void buildStream(final Consumer<byte[]> onPart, final Consumer<Boolean> onCompleted) {
-        final CosyAgent agent = _getCosyAgent.get();
+        final AgentLease<CosyAgent> lease = _getCosyAgent.get();
+        final CosyAgent agent = lease.agent();
         log.info("start gen cosyvoice: {}", _text);
         final AtomicInteger idx = new AtomicInteger(0);
         final long startInMs = System.currentTimeMillis();
+        // set by onFail, the failure recorded there once, not again when stopStreamInputTts() throws after it
+        final AtomicBoolean failed = new AtomicBoolean(false);
         final StreamInputTtsListener listener =  new StreamInputTtsListener() {
             //流入语音合成开始
             @Override
@@ -108,6 +113,9 @@ public class CosyStreamTask implements BuildStreamTask {
             //收到语音合成的语音二进制数据
             @Override
             public void onAudioData(final ByteBuffer message) {
+                if (_cancelled.get()) {
+                    return;
+                }
                 byte[] bytesArray = new byte[message.remaining()];
                 message.get(bytesArray, 0, bytesArray.length);
                 log.info("CosyStreamTask: {}: onData {} bytes", idx.incrementAndGet(), bytesArray.length);
@@ -126,6 +134,8 @@ public class CosyStreamTask implements BuildStreamTask {
                 // task_id是调用方和服务端通信的唯一标识，当遇到问题时，需要提供此task_id以便排查。
                 log.info("session_id: {}, task_id: {}, status: {}, status_text: {}",
                         getStreamInputTts().getCurrentSessionId(), response.getTaskId(), response.getStatus(), response.getStatusText());
+                failed.set(true);
+                agent.recordFailure("cosy onFail: " + response.getStatus() + "/" + response.getStatusText());
                 onCompleted.accept(false);
             }
         };
@@ -133,6 +143,11 @@ public class CosyStreamTask implements BuildStreamTask {
         StreamInputTts synthesizer = null;
         try {
             synthesizer = agent.buildCosyvoiceSynthesizer(listener);
+            _synthesizer = synthesizer;
+            if (_cancelled.get()) {
+                log.info("CosyStreamTask: cancelled before start, skip");
+                return;
+            }
             if (null != _voice && !_voice.isEmpty()) {
                 synthesizer.setVoice(_voice);
             }
@@ -150,25 +165,49 @@ public class CosyStreamTask implements BuildStreamTask {
                 _onSynthesizer.accept(synthesizer);
             }
 
+            final long startSynthesisInMs = System.currentTimeMillis();
             synthesizer.startStreamInputTts();
-            agent.incConnected();
+            agent.recordLatency(System.currentTimeMillis() - startSynthesisInMs);
+            lease.markConnected();
             synthesizer.setMinSendIntervalMS(100);
             synthesizer.sendStreamInputTts(_text);
             //通知服务端流入文本数据发送完毕，阻塞等待服务端处理完成。
             synthesizer.stopStreamInputTts();
         } catch (Exception ex) {
-            log.warn("buildStream failed: {}", ex.toString());
+            if (_cancelled.get()) {
+                // synthesizer closed by cancel(), not agent's failure
+                log.info("CosyStreamTask: cancelled during synthesis: {}", ex.toString());
+            } else if (failed.get()) {
+                log.info("CosyStreamTask: synthesis failed (recorded by onFail): {}", ex.toString());
+            } else {
+                log.warn("buildStream failed: {}", ex.toString());
+                agent.recordFailure("cosy buildStream failed: " + ex);
+            }
         } finally {
             //关闭连接
             if (null != synthesizer) {
                 synthesizer.close();
             }
-            agent.decConnected();
-            agent.decConnection();
+            // 释放占用的并发数, 仅当 markConnected 后才会减少已连接计数
+            lease.close();
+        }
+    }
+
+    /**
+     * close synthesizer, blocked stopStreamInputTts() in buildStream return and release the lease
+     */
+    @Override
+    public void cancel() {
+        if (_cancelled.compareAndSet(false, true)) {
+            final StreamInputTts synthesizer = _synthesizer;
+            if (null != synthesizer) {
+                log.info("CosyStreamTask: cancel synthesis of {}", _text);
+                synthesizer.close();
+            }
         }
     }
 
-    private final Supplier<CosyAgent> _getCosyAgent;
+    private final Supplier<AgentLease<CosyAgent>> _getCosyAgent;
     private final Consumer<StreamInputTts> _onSynthesizer;
     private final String _key;
     private final String _text;
@@ -176,4 +215,6 @@ public class CosyStreamTask implements BuildStreamTask {
     private final String _pitch_rate;
     private final String _speech_rate;
     private final String _volume;
+    private final AtomicBoolean _cancelled = new AtomicBoolean(false);
+    private volatile StreamInputTts _synthesizer = null;
 }
@@ -5,18 +5,17 @@ import com.aliyun.oss.OSS;
 import com.aliyun.oss.model.OSSObject;
 import lombok.extern.slf4j.Slf4j;
 
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.UnsupportedAudioFileException;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.function.Consumer;
 
+/**
+ * load whole object (eg: wav file) from oss as is, cached once and converted by ResampleStreamTask for pcm consumers
+ */
 @Slf4j
 public class OSSStreamTask implements BuildStreamTask {
-    public OSSStreamTask(final String path, final OSS ossClient, final boolean removeWavHdr) {
+    public OSSStreamTask(final String path, final OSS ossClient) {
         _ossClient = ossClient;
-        _removeWavHdr = removeWavHdr;
         // eg: {bucket=ylhz-aicall,url=ws://172.18.86.131:6789/playback,vars_playback_id=<uuid>,content_id=2088788,vars_start_timestamp=1732028219711854}
         //          aispeech/dd_app_sb_3_0/c264515130674055869c16fcc2458109.wav
         final int leftBracePos = path.indexOf('{');
@@ -54,15 +53,6 @@ public class OSSStreamTask implements BuildStreamTask {
         try (final OSSObject ossObject = _ossClient.getObject(_bucketName, _objectName);
              final ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
             ossObject.getObjectContent().transferTo(bos);
-            if (_removeWavHdr) {
-                try {
-                    final ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
-                    bos.reset();
-                    AudioSystem.getAudioInputStream(bis).transferTo(bos);
-                } catch (UnsupportedAudioFileException ex) {
-                    log.warn("failed to extract pcm from wav: {}", ex.toString());
-                }
-            }
             bytes = bos.toByteArray();
             log.info("and save content size {}, total cost: {} ms", bytes.length, System.currentTimeMillis() - startInMs);
             onPart.accept(bytes);
@@ -78,5 +68,4 @@ public class OSSStreamTask implements BuildStreamTask {
     private String _bucketName;
     private String _objectName;
     private String _key;
-    private final boolean _removeWavHdr;
 }
@@ -0,0 +1,209 @@
+package com.yulore.medhub.stream;
+
+import com.yulore.util.PolyphaseResampler;
+import com.yulore.util.WaveUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * convert source stream (usually cached once at its native rate) into consumer's sample rate on the fly,
+ *  each buildStream() own its resampler, so one cached asset serves 8 kHz and 16 kHz consumers.
+ *  source is either raw 16bit mono pcm of sourceRate, or whole wav file (sourceRate == 0, rate from header).
+ */
+@Slf4j
+public class ResampleStreamTask implements BuildStreamTask {
+    /**
+     * @param source pcm stream of sourceRate
+     * @param withWavHdr prepend wav header of targetRate, for consumer read as wav file
+     */
+    public static BuildStreamTask ofPcm(final BuildStreamTask source, final int sourceRate, final int targetRate,
+                                        final boolean withWavHdr) {
+        return new ResampleStreamTask(source, sourceRate, targetRate, withWavHdr);
+    }
+
+    /**
+     * @param source wav file stream, output pcm of targetRate without header
+     */
+    public static BuildStreamTask ofWav(final BuildStreamTask source, final int targetRate) {
+        return new ResampleStreamTask(source, 0, targetRate, false);
+    }
+
+    private ResampleStreamTask(final BuildStreamTask source, final int sourceRate, final int targetRate,
+                               final boolean withWavHdr) {
+        _source = source;
+        _sourceRate = sourceRate;
+        _targetRate = targetRate;
+        _withWavHdr = withWavHdr;
+    }
+
+    @Override
+    public String key() {
+        // cache source instead of resampled stream
+        return null;
+    }
+
+    @Override
+    public void buildStream(final Consumer<byte[]> onPart, final Consumer<Boolean> onCompleted) {
+        if (_withWavHdr) {
+            onPart.accept(WaveUtil.genWaveHeader(_targetRate, 1));
+        }
+        final Converter converter = new Converter(onPart);
+        _source.buildStream(converter::onPart, (isOK) -> {
+            converter.onCompleted();
+            onCompleted.accept(isOK);
+        });
+    }
+
+    @Override
+    public void cancel() {
+        _source.cancel();
+    }
+
+    // per consumer state, source's onPart called in order (one by one)
+    private class Converter {
+        Converter(final Consumer<byte[]> onPart) {
+            _onPart = onPart;
+            if (_sourceRate > 0) {
+                initResampler(_sourceRate);
+            }
+        }
+
+        void onPart(final byte[] bytes) {
+            if (_header != null) {
+                // wav source: collect until data chunk found
+                _header.writeBytes(bytes);
+                final byte[] wav = _header.toByteArray();
+                final int dataOffset = parseWavHeader(wav);
+                if (dataOffset < 0) {
+                    return;
+                }
+                _header = null;
+                if (dataOffset < wav.length) {
+                    convert(wav, dataOffset, wav.length - dataOffset);
+                }
+                return;
+            }
+            convert(bytes, 0, bytes.length);
+        }
+
+        void onCompleted() {
+            if (_header != null && _header.size() > 0) {
+                log.warn("ResampleStreamTask: {} bytes without valid wav header, drop", _header.size());
+            }
+            if (_resampler != null && _pcmBytes > 0) {
+                log.info("ResampleStreamTask: {} => {} Hz, {} ms audio converted in {} us ({} us per second of audio)",
+                        _resampler.fromRate(), _resampler.toRate(), _pcmBytes * 1000L / (_resampler.fromRate() * 2L),
+                        _costInNanos / 1000, _costInNanos * _resampler.fromRate() * 2L / _pcmBytes / 1000L);
+            }
+        }
+
+        private void convert(final byte[] bytes, final int offset, final int length) {
+            if (_resampler == null) {
+                // same rate or unsupported format, pass through
+                _onPart.accept(offset == 0 && length == bytes.length ? bytes : copyOf(bytes, offset, length));
+                return;
+            }
+            final long startInNanos = System.nanoTime();
+            int off = offset, len = length;
+            if (_oddByte >= 0 && len > 0) {
+                // chunk split inside sample, complete it with first byte
+                _sample[0] = (byte) _oddByte;
+                _sample[1] = bytes[off];
+                _oddByte = -1;
+                off++;
+                len--;
+            }
+            final boolean withCarry = off != offset;
+            final int evenLen = len & ~1;
+            // resample into reused work buffer, grown on demand and never shrunk
+            final int outBytes = _resampler.outputBytes((withCarry ? 2 : 0) + evenLen);
+            if (_out.length < outBytes) {
+                _out = new byte[Math.max(outBytes, _out.length * 2)];
+            }
+            int written = withCarry ? _resampler.process(_sample, 0, 2, _out, 0) : 0;
+            written += _resampler.process(bytes, off, evenLen, _out, written);
+            if ((len & 1) != 0) {
+                _oddByte = bytes[off + len - 1] & 0xFF;
+            }
+            _pcmBytes += length;
+            _costInNanos += System.nanoTime() - startInNanos;
+            if (written > 0) {
+                // chunk retained by consumer (eg: cache / playback task), hand over exact-size copy
+                _onPart.accept(Arrays.copyOf(_out, written));
+            }
+        }
+
+        /**
+         * @return offset of pcm data, -1 if header incomplete
+         */
+        private int parseWavHeader(final byte[] wav) {
+            if (wav.length < 12) {
+                return -1;
+            }
+            if (wav[0] != 'R' || wav[1] != 'I' || wav[2] != 'F' || wav[3] != 'F') {
+                log.warn("ResampleStreamTask: source not wav, pass through");
+                return 0;
+            }
+            int pos = 12;
+            int rate = 0, channels = 0, bits = 0, format = 0;
+            while (pos + 8 <= wav.length) {
+                final int size = int32(wav, pos + 4);
+                if (wav[pos] == 'f' && wav[pos + 1] == 'm' && wav[pos + 2] == 't' && wav[pos + 3] == ' ') {
+                    if (pos + 8 + 16 > wav.length) {
+                        return -1;
+                    }
+                    format = int16(wav, pos + 8);
+                    channels = int16(wav, pos + 10);
+                    rate = int32(wav, pos + 12);
+                    bits = int16(wav, pos + 22);
+                } else if (wav[pos] == 'd' && wav[pos + 1] == 'a' && wav[pos + 2] == 't' && wav[pos + 3] == 'a') {
+                    if (format == 1 && channels == 1 && bits == 16) {
+                        initResampler(rate);
+                    } else {
+                        log.warn("ResampleStreamTask: unsupported wav format: {}/channels: {}/bits: {}, pass through pcm",
+                                format, channels, bits);
+                    }
+                    return pos + 8;
+                }
+                // chunks are word aligned
+                pos += 8 + size + (size & 1);
+            }
+            return -1;
+        }
+
+        private void initResampler(final int rate) {
+            _resampler = rate != _targetRate ? new PolyphaseResampler(rate, _targetRate) : null;
+        }
+
+        private final Consumer<byte[]> _onPart;
+        private ByteArrayOutputStream _header = _sourceRate > 0 ? null : new ByteArrayOutputStream();
+        private PolyphaseResampler _resampler = null;
+        private final byte[] _sample = new byte[2];
+        private byte[] _out = new byte[0];
+        private int _oddByte = -1;
+        private long _pcmBytes = 0;
+        private long _costInNanos = 0;
+    }
+
+    private static byte[] copyOf(final byte[] bytes, final int offset, final int length) {
+        final byte[] copy = new byte[length];
+        System.arraycopy(bytes, offset, copy, 0, length);
+        return copy;
+    }
+
+    private static int int16(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int int32(final byte[] bytes, final int offset) {
+        return int16(bytes, offset) | (int16(bytes, offset + 2) << 16);
+    }
+
+    private final BuildStreamTask _source;
+    private final int _sourceRate;
+    private final int _targetRate;
+    private final boolean _withWavHdr;
+}
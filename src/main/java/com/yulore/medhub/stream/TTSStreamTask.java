@@ -6,10 +6,12 @@ import com.google.common.base.Charsets;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import com.mgnt.utils.StringUnicodeEncoderDecoder;
+import com.yulore.medhub.nls.AgentLease;
 import com.yulore.medhub.nls.TTSAgent;
 import com.yulore.medhub.nls.TTSTask;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -18,7 +20,7 @@ import java.util.function.Supplier;
 public class TTSStreamTask implements BuildStreamTask {
     final HashFunction _MD5 = Hashing.md5();
 
-    public TTSStreamTask(final String path, final Supplier<TTSAgent> getTTSAgent, final Consumer<SpeechSynthesizer> onSynthesizer) {
+    public TTSStreamTask(final String path, final Supplier<AgentLease<TTSAgent>> getTTSAgent, final Consumer<SpeechSynthesizer> onSynthesizer) {
         _getTTSAgent = getTTSAgent;
         _onSynthesizer = onSynthesizer;
 
@@ -78,6 +80,10 @@ public class TTSStreamTask implements BuildStreamTask {
         final AtomicInteger idx = new AtomicInteger(0);
         final long startInMs = System.currentTimeMillis();
 
+        if (_cancelled.get()) {
+            log.info("TTSStreamTask: cancelled before gen tts, skip");
+            return;
+        }
         final TTSTask task = new TTSTask(_getTTSAgent.get(),
                 (synthesizer)->{
                     synthesizer.setText(_text);
@@ -99,6 +105,9 @@ public class TTSStreamTask implements BuildStreamTask {
                     }
                 },
                 (bytes) -> {
+                    if (_cancelled.get()) {
+                        return;
+                    }
                     final byte[] bytesArray = new byte[bytes.remaining()];
                     bytes.get(bytesArray, 0, bytesArray.length);
                     onPart.accept(bytesArray);
@@ -112,10 +121,26 @@ public class TTSStreamTask implements BuildStreamTask {
                     onCompleted.accept(false);
                     log.warn("tts failed: {}", response);
                 });
+        _task = task;
+        if (_cancelled.get()) {
+            // cancel() called during TTSTask construct
+            task.cancel();
+            return;
+        }
         task.start();
     }
 
-    private final Supplier<TTSAgent> _getTTSAgent;
+    @Override
+    public void cancel() {
+        if (_cancelled.compareAndSet(false, true)) {
+            final TTSTask task = _task;
+            if (null != task) {
+                task.cancel();
+            }
+        }
+    }
+
+    private final Supplier<AgentLease<TTSAgent>> _getTTSAgent;
     private final Consumer<SpeechSynthesizer> _onSynthesizer;
     private final String _key;
     private final String _text;
@@ -123,4 +148,6 @@ public class TTSStreamTask implements BuildStreamTask {
     private final String _pitch_rate;
     private final String _speech_rate;
     private final String _volume;
+    private final AtomicBoolean _cancelled = new AtomicBoolean(false);
+    private volatile TTSTask _task = null;
 }
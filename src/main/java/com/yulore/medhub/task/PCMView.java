@@ -0,0 +1,99 @@
+package com.yulore.medhub.task;
+
+import com.yulore.util.PolyphaseResampler;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * immutable pre-decoded pcm of one playback source, decoded once off the pacing thread (eg: oss loader),
+ *  frame at any sample position is a slice (offset arithmetic) of the same array, so seek is O(1)
+ *  and one view shared by all PlayPCMTask (re)playing the same id.
+ */
+public class PCMView {
+    public static PCMView ofWav(final byte[] wav) throws IOException, UnsupportedAudioFileException {
+        try (final AudioInputStream ais = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wav))) {
+            final AudioFormat format = ais.getFormat();
+            return new PCMView(ais.readAllBytes(), (int) format.getSampleRate(), format.getSampleSizeInBits(), format.getChannels());
+        }
+    }
+
+    public static PCMView ofPcm(final List<byte[]> bufs, final int sampleRate) {
+        int length = 0;
+        for (byte[] buf : bufs) {
+            length += buf.length;
+        }
+        final byte[] pcm = new byte[length];
+        int offset = 0;
+        for (byte[] buf : bufs) {
+            System.arraycopy(buf, 0, pcm, offset, buf.length);
+            offset += buf.length;
+        }
+        return new PCMView(pcm, sampleRate, 16, 1);
+    }
+
+    private PCMView(final byte[] pcm, final int sampleRate, final int sampleSizeInBits, final int channels) {
+        _pcm = pcm;
+        _sampleRate = sampleRate;
+        _sampleSizeInBits = sampleSizeInBits;
+        _channels = channels;
+        _bytesPerSample = sampleSizeInBits / 8 * channels;
+    }
+
+    /**
+     * @return view converted to sampleRate (this if same rate), eg: wav played to G.711 (8 kHz) session;
+     *  converted once when loaded, so playback itself stay slice only
+     */
+    public PCMView resampleTo(final int sampleRate) throws UnsupportedAudioFileException {
+        if (sampleRate == _sampleRate) {
+            return this;
+        }
+        if (_sampleSizeInBits != 16 || _channels != 1) {
+            throw new UnsupportedAudioFileException("can't resample " + this + " to " + sampleRate + " Hz");
+        }
+        return new PCMView(new PolyphaseResampler(_sampleRate, sampleRate).process(_pcm), sampleRate, 16, 1);
+    }
+
+    public int sampleRate() {
+        return _sampleRate;
+    }
+
+    public SampleInfo sampleInfo(final int interval) {
+        return new SampleInfo(_sampleRate, interval, _sampleSizeInBits, _channels);
+    }
+
+    public int length() {
+        return _pcm.length;
+    }
+
+    /**
+     * @return byte offset of sample position, clamped to length
+     */
+    public int offsetOf(final long samples) {
+        return (int) Math.min(_pcm.length, Math.max(0, samples) * _bytesPerSample);
+    }
+
+    /**
+     * @return slice of len bytes at offset without copy, null if less than len bytes left
+     */
+    public ByteBuffer slice(final int offset, final int len) {
+        return offset + len <= _pcm.length ? ByteBuffer.wrap(_pcm, offset, len) : null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pcm(%d bytes, %d Hz/%d bits/%d channels)", _pcm.length, _sampleRate, _sampleSizeInBits, _channels);
+    }
+
+    private final byte[] _pcm;
+    private final int _sampleRate;
+    private final int _sampleSizeInBits;
+    private final int _channels;
+    private final int _bytesPerSample;
+}
@@ -3,19 +3,15 @@ package com.yulore.medhub.task;
 import com.yulore.medhub.vo.HubEventVO;
 import com.yulore.medhub.vo.PayloadPlaybackStart;
 import com.yulore.medhub.vo.PayloadPlaybackStop;
+import com.yulore.util.AudioCodec;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.java_websocket.WebSocket;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 @RequiredArgsConstructor
@@ -24,73 +20,66 @@ import java.util.function.Consumer;
 public class PlayPCMTask {
     final int _id;
     final int _initialSamples;
-    final ScheduledExecutorService _executor;
-    final InputStream _is;
+    final PlaybackPacer _pacer;
+    // pre-decoded source, pacer thread only slice it
+    final PCMView _view;
     final SampleInfo _sampleInfo;
     final WebSocket _webSocket;
+    final AudioCodec _codec;
     final Consumer<PlayPCMTask> _onEnd;
 
     int _lenInBytes;
-    final AtomicReference<ScheduledFuture<?>> _currentFuture = new AtomicReference<>(null);
-    final AtomicInteger _currentIdx = new AtomicInteger(0);
-    private long _startTimestamp;
-    private long _pauseTimestamp;
+    int _pos;
+    // reused for every frame when codec is not L16, ws send() copy it synchronously
+    ByteBuffer _wire;
 
     final AtomicBoolean _started = new AtomicBoolean(false);
     final AtomicBoolean _stopped = new AtomicBoolean(false);
+    final AtomicBoolean _paused = new AtomicBoolean(false);
     final AtomicBoolean _stopEventSended = new AtomicBoolean(false);
     final AtomicInteger _samples = new AtomicInteger(0);
 
     public void start() {
         _lenInBytes = _sampleInfo.bytesPerInterval();
+        _wire = _codec != AudioCodec.L16 ? ByteBuffer.allocate(_lenInBytes / 2) : null;
         _samples.set(_initialSamples);
+        // seek by samples: offset arithmetic on pre-decoded view
+        _pos = _view.offsetOf(_initialSamples);
         if (_stopped.get()) {
             log.warn("pcm task has stopped, can't start again");
         }
         if (_started.compareAndSet(false, true)) {
             HubEventVO.sendEvent(_webSocket, "PlaybackStart", new PayloadPlaybackStart(_id,"pcm", _sampleInfo.sampleRate(), _sampleInfo.interval(), _sampleInfo.channels()));
-            _startTimestamp = System.currentTimeMillis();
-            schedule(1 );
+            _pacer.schedule(this, this::playOneInterval, _sampleInfo.interval());
         } else {
             log.warn("pcm task started, ignore multi-call start()");
         }
     }
 
-    private void schedule(final int idx) {
+    /**
+     * called by pacer every interval
+     * @return false if playback stopped or completed
+     */
+    private boolean playOneInterval() {
         if (_stopped.get()) {
-            // ignore if stopped flag set
-            return;
+            // leave pacer if stopped flag set
+            return false;
         }
-        try {
-            _currentIdx.set(idx);
-            ScheduledFuture<?> current = null;
-            final byte[] bytes = new byte[_lenInBytes];
-            final int readSize = _is.read(bytes);
-            // log.info("PlayPCMTask {}: schedule read {} bytes", idx, readSize);
-            final long delay = _startTimestamp + (long) _sampleInfo.interval() * idx - System.currentTimeMillis();
-            if (readSize == _lenInBytes) {
-                current = _executor.schedule(() -> {
-                    _webSocket.send(bytes);
-                    _samples.addAndGet(_sampleInfo.sampleRate() / (1000 / _sampleInfo.interval()));
-                    schedule(idx+1);
-                },  delay, TimeUnit.MILLISECONDS);
-            } else {
-                // _is.close();
-                current = _executor.schedule(()->{
-                            safeSendPlaybackStopEvent(true);
-                            _onEnd.accept(this);
-                            log.info("schedule: schedule playback by {} send action", idx);
-                        },
-                        delay, TimeUnit.MILLISECONDS);
-            }
-            if (_stopped.get()) {
-                // cancel if stopped flag set
-                current.cancel(false);
-            } else {
-                _currentFuture.set(current);
-            }
-        } catch (IOException ex) {
-            log.warn("schedule: {}", ex.toString());
+        if (_paused.get()) {
+            // paused: send nothing, keep position
+            return true;
+        }
+        final ByteBuffer frame = _view.slice(_pos, _lenInBytes);
+        if (frame != null) {
+            _pos += _lenInBytes;
+            _webSocket.send(_codec.encode(frame, _wire));
+            _samples.addAndGet(_sampleInfo.sampleRate() / (1000 / _sampleInfo.interval()));
+            return true;
+        } else {
+            safeSendPlaybackStopEvent(true);
+            _onEnd.accept(this);
+            log.info("playOneInterval: playback completed by {} samples", _samples.get());
+            return false;
         }
     }
 
@@ -99,11 +88,7 @@ public class PlayPCMTask {
             // ignore if stopped flag set
             return;
         }
-        final ScheduledFuture<?> current = _currentFuture.getAndSet(null);
-        if (null != current) {
-            current.cancel(true);
-        }
-        _pauseTimestamp = System.currentTimeMillis();
+        _paused.set(true);
     }
 
     public void resume() {
@@ -111,17 +96,13 @@ public class PlayPCMTask {
             // ignore if stopped flag set
             return;
         }
-        _startTimestamp += System.currentTimeMillis() - _pauseTimestamp;
-        schedule(_currentIdx.get());
+        _paused.set(false);
     }
 
     public void stop() {
         if (_stopped.compareAndSet(false, true)) {
             if (_started.get()) {
-                final ScheduledFuture<?> current = _currentFuture.getAndSet(null);
-                if (null != current) {
-                    current.cancel(false);
-                }
+                // pacer drop this task on next tick
                 safeSendPlaybackStopEvent(false);
             }
         }
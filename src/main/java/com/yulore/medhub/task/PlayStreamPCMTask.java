@@ -1,21 +1,15 @@
 package com.yulore.medhub.task;
 
-import com.yulore.util.ByteArrayListInputStream;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -26,19 +20,19 @@ import java.util.function.Consumer;
 public class PlayStreamPCMTask {
     private final String _taskId = UUID.randomUUID().toString();
     final String _path;
-    final ScheduledExecutorService _executor;
+    final PlaybackPacer _pacer;
     final SampleInfo _sampleInfo;
+    final PlayoutPolicy _policy;
     private final Consumer<Long> _onStartSend;
     private final Consumer<Long> _onStopSend;
-    private final Consumer<byte[]> _doSendData;
+    // frame only valid during accept(), consumer must copy it (eg: ws send / recording) if need to keep
+    private final Consumer<ByteBuffer> _doSendData;
     private final AtomicLong _startSendTimestamp = new AtomicLong(0);
 
     private final Consumer<PlayStreamPCMTask> _onEnd;
     private final AtomicBoolean _completed = new AtomicBoolean(false);
 
     int _interval_bytes;
-    final AtomicReference<ScheduledFuture<?>> _next = new AtomicReference<>(null);
-    private long _startTimestamp;
 
     final AtomicBoolean _started = new AtomicBoolean(false);
     final AtomicBoolean _stopped = new AtomicBoolean(false);
@@ -47,6 +41,21 @@ public class PlayStreamPCMTask {
 
     private boolean _streaming = true;
     private int _pos = 0;
+    // read cursor: next byte to send is _bufs[_chunkIdx][_chunkOff]
+    private int _chunkIdx = 0;
+    private int _chunkOff = 0;
+    // reused frame buffers, allocated once per task
+    private byte[] _frame = null;
+    private byte[] _silence = null;
+    private int _framesCount = 0;
+    private int _slicedCount = 0;
+    private long _allocatedBytes = 0;
+    // buffered bytes required before (re)start sending, doubled on each underrun (adaptive)
+    private int _rebufferBytes = -1;
+    // timestamp of current underrun, 0 means not in underrun
+    private long _underrunTimestamp = 0;
+    private int _underrunCount = 0;
+    private long _underrunMs = 0;
     private int _length = 0;
     final List<byte[]> _bufs = new ArrayList<>();
     private final Lock _lock = new ReentrantLock();
@@ -67,12 +76,33 @@ public class PlayStreamPCMTask {
         return _completed.get();
     }
 
+    public int underrunCount() {
+        try {
+            _lock.lock();
+            return _underrunCount;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return total duration of underruns (include current one)
+     */
+    public long underrunMs() {
+        try {
+            _lock.lock();
+            return _underrunMs + (_underrunTimestamp != 0 ? System.currentTimeMillis() - _underrunTimestamp : 0);
+        } finally {
+            _lock.unlock();
+        }
+    }
+
     public void appendData(final byte[] bytes) {
         try {
             _lock.lock();
             _bufs.add(bytes);
             _length += bytes.length;
-            if (!_started.get()) {
+            if (!_started.get() && _length >= rebufferBytes()) {
                 start();
             }
         } finally {
@@ -84,6 +114,10 @@ public class PlayStreamPCMTask {
         try {
             _lock.lock();
             _streaming = false;
+            if (!_started.get() && _length > 0) {
+                // source completed before min buffer reached
+                start();
+            }
         } finally {
             _lock.unlock();
         }
@@ -101,8 +135,10 @@ public class PlayStreamPCMTask {
             if (_started.compareAndSet(false, true)) {
                 log.info("({}): pcm task start to playback", this);
                 // HubEventVO.sendEvent(_webSocket, "PlaybackStart", new PayloadPlaybackStart(0,"pcm", _sampleInfo.sampleRate, _sampleInfo.interval, _sampleInfo.channels));
-                _startTimestamp = System.currentTimeMillis();
-                playAndSchedule(1 );
+                // burst frames sent immediately, then paced by PlaybackPacer every interval
+                if (playBurst()) {
+                    _pacer.schedule(this, this::playOneInterval, _sampleInfo.interval());
+                }
             } else {
                 log.warn("({}): pcm task started, ignore multi-call start()", this);
             }
@@ -111,55 +147,136 @@ public class PlayStreamPCMTask {
         }
     }
 
-    private void playAndSchedule(final int intervalCount) {
-        ScheduledFuture<?> next = null;
+    private int rebufferBytes() {
+        if (_rebufferBytes < 0) {
+            _rebufferBytes = _policy.bytesOf(_policy.minBufferMs(), _sampleInfo);
+        }
+        return _rebufferBytes;
+    }
+
+    /**
+     * send buffered frames up to policy's burst, client's jitter buffer absorb them
+     * @return false if playback stopped or completed
+     */
+    private boolean playBurst() {
         try {
             _lock.lock();
-            if (_stopped.get()) {
-                // ignore if stopped flag set
-                log.warn("({}): pcm task has stopped, abort playAndSchedule", this);
-                return;
+            final int frames = _policy.burstFrames(_sampleInfo);
+            for (int idx = 0; idx < frames; idx++) {
+                if (!sendOneFrame()) {
+                    return false;
+                }
+                if (_underrunTimestamp != 0 || _pos + _interval_bytes > _length) {
+                    // burst only buffered data, underrun detected on next tick
+                    break;
+                }
             }
-            if (_pos + _interval_bytes > _length && _streaming) {
-                // need more data
-                final long delay = _startTimestamp + (long) _sampleInfo.interval() * intervalCount - System.currentTimeMillis();
-                next = _executor.schedule(() -> playAndSchedule(intervalCount + 1), delay, TimeUnit.MILLISECONDS);
-                log.warn("({}): pcm task need_more_data, delay_playback_to_next", this);
-            } else {
-                final byte[] bytes = new byte[_interval_bytes];
-                final int read_size = fillIntervalData(bytes);
-                if (read_size == _interval_bytes) {
-                    fireStartSendOnce();
-                    _doSendData.accept(bytes);
-                    final long delay = _startTimestamp + (long) _sampleInfo.interval() * intervalCount - System.currentTimeMillis();
-                    next = _executor.schedule(() -> playAndSchedule(intervalCount + 1), delay, TimeUnit.MILLISECONDS);
-                } else {
-                    _stopped.compareAndSet(false, true);
-                    _completed.compareAndSet(false, true);
-                    safeSendPlaybackStopEvent();
-                    log.info("({}): finish playback by {} send action", this, intervalCount);
+            return true;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if playback stopped or completed
+     */
+    private boolean playOneInterval() {
+        try {
+            _lock.lock();
+            if (_underrunTimestamp != 0) {
+                if (_stopped.get()) {
+                    return false;
                 }
+                if (_length - _pos < rebufferBytes() && _streaming) {
+                    // still rebuffering
+                    return true;
+                }
+                final long underrunMs = System.currentTimeMillis() - _underrunTimestamp;
+                _underrunMs += underrunMs;
+                _underrunTimestamp = 0;
+                log.info("({}): pcm task recover from underrun after {} ms, rebuffered: {} bytes", this, underrunMs, _length - _pos);
+                // refill client's jitter buffer drained by underrun
+                return playBurst();
             }
-        } catch (IOException ex) {
-            log.warn("({}): pcm task schedule failed, detail: {}", this, ex.toString());
-            throw new RuntimeException(ex);
+            return sendOneFrame();
         } finally {
-            _next.set(next);
             _lock.unlock();
         }
     }
 
-    private int fillIntervalData(final byte[] bytes) throws IOException {
+    /**
+     * @return false if playback stopped or completed
+     */
+    private boolean sendOneFrame() {
+        if (_stopped.get()) {
+            // leave pacer if stopped flag set
+            return false;
+        }
+        if (!_paused.get() && _pos + _interval_bytes > _length && _streaming) {
+            // need more data: adaptive, wait for longer buffer on each underrun (up to maxBufferMs)
+            _underrunCount++;
+            _underrunTimestamp = System.currentTimeMillis();
+            _rebufferBytes = Math.max(_interval_bytes,
+                    Math.min(rebufferBytes() * 2, _policy.bytesOf(_policy.maxBufferMs(), _sampleInfo)));
+            log.warn("({}): pcm task need_more_data, underrun: {}, wait for rebuffer: {} bytes",
+                    this, _underrunCount, _rebufferBytes);
+            return true;
+        }
+        final ByteBuffer frame = nextIntervalFrame();
+        if (frame != null) {
+            _framesCount++;
+            fireStartSendOnce();
+            _doSendData.accept(frame);
+            return true;
+        } else {
+            _stopped.compareAndSet(false, true);
+            _completed.compareAndSet(false, true);
+            safeSendPlaybackStopEvent();
+            log.info("({}): finish playback by {} send action", this, _framesCount);
+            return false;
+        }
+    }
+
+    /**
+     * @return next interval frame, or null if no more data. frame is a slice of cached chunk when it lies
+     *  in one chunk (zero copy), otherwise copied into reused _frame; paused state return reused _silence
+     */
+    private ByteBuffer nextIntervalFrame() {
         if (_paused.get()) {
             // playback in paused state, so send silent data
-            return bytes.length;
-        } else {
-            try (final InputStream is = new ByteArrayListInputStream(_bufs)) {
-                is.skip(_pos);
-                final int read_size = is.read(bytes);
-                _pos += read_size;
-                return read_size;
+            if (_silence == null) {
+                _silence = new byte[_interval_bytes];
+                _allocatedBytes += _interval_bytes;
             }
+            return ByteBuffer.wrap(_silence);
+        }
+        if (_chunkIdx < _bufs.size() && _bufs.get(_chunkIdx).length - _chunkOff >= _interval_bytes) {
+            final ByteBuffer slice = ByteBuffer.wrap(_bufs.get(_chunkIdx), _chunkOff, _interval_bytes);
+            advance(_interval_bytes);
+            _slicedCount++;
+            return slice;
+        }
+        if (_frame == null) {
+            _frame = new byte[_interval_bytes];
+            _allocatedBytes += _interval_bytes;
+        }
+        // continue from cursor (_chunkIdx, _chunkOff) instead of skip(_pos) from the first chunk
+        int filled = 0;
+        while (filled < _interval_bytes && _chunkIdx < _bufs.size()) {
+            final int size = Math.min(_interval_bytes - filled, _bufs.get(_chunkIdx).length - _chunkOff);
+            System.arraycopy(_bufs.get(_chunkIdx), _chunkOff, _frame, filled, size);
+            filled += size;
+            advance(size);
+        }
+        return filled == _interval_bytes ? ByteBuffer.wrap(_frame) : null;
+    }
+
+    private void advance(final int size) {
+        _pos += size;
+        _chunkOff += size;
+        if (_chunkOff >= _bufs.get(_chunkIdx).length) {
+            _chunkIdx++;
+            _chunkOff = 0;
         }
     }
 
@@ -203,10 +320,7 @@ public class PlayStreamPCMTask {
             _lock.lock();
             if (_stopped.compareAndSet(false, true)) {
                 if (_started.get()) {
-                    final ScheduledFuture<?> current = _next.getAndSet(null);
-                    if (null != current) {
-                        current.cancel(false);
-                    }
+                    // pacer drop this task on next tick
                     safeSendPlaybackStopEvent();
                 }
             }
@@ -217,6 +331,12 @@ public class PlayStreamPCMTask {
 
     private void safeSendPlaybackStopEvent() {
         if (_stopEventSended.compareAndSet(false, true)) {
+            if (_underrunTimestamp != 0) {
+                _underrunMs += System.currentTimeMillis() - _underrunTimestamp;
+                _underrunTimestamp = 0;
+            }
+            log.info("({}): frames: {}, sliced(zero copy): {}, allocated: {} bytes, underruns: {}/{} ms",
+                    this, _framesCount, _slicedCount, _allocatedBytes, _underrunCount, _underrunMs);
             _startSendTimestamp.set(0);
             _onStopSend.accept(System.currentTimeMillis());
             _onEnd.accept(this);
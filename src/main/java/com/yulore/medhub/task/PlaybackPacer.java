@@ -0,0 +1,253 @@
+package com.yulore.medhub.task;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * pacing engine of all playback streams, instead of one ScheduledFuture per 20 ms frame per stream:
+ *  a few tick threads, each drive a hashed timer wheel with tick_ms slots, and emit next frame of
+ *  all streams due in current slot in batch. tick deadlines are absolute (start + n * tick, by nanoTime),
+ *  so late wakeup never accumulate as drift; lateness of each tick recorded into jitter histogram.
+ */
+@Slf4j
+@Component
+public class PlaybackPacer {
+    public interface Paced {
+        /**
+         * called on pacer thread every interval, should only emit frame and never block (eg: remote call),
+         *  call cost more than slow_tick_us is reported by watchdog
+         * @return false to leave pacer (playback ended or stopped)
+         */
+        boolean onTick();
+    }
+
+    @Value("${playback.pacer.threads:2}")
+    private int _threads;
+
+    @Value("${playback.pacer.tick_ms:20}")
+    private long _tick_ms;
+
+    @Value("${playback.pacer.wheel_size:64}")
+    private int _wheel_size;
+
+    @Value("${playback.pacer.report_interval_s:60}")
+    private long _report_interval_s;
+
+    @Value("${playback.pacer.slow_tick_us:1000}")
+    private long _slow_tick_us;
+
+    public PlaybackPacer() {
+    }
+
+    public PlaybackPacer(final int threads, final long tickMs, final int wheelSize) {
+        _threads = threads;
+        _tick_ms = tickMs;
+        _wheel_size = wheelSize;
+        _report_interval_s = 60;
+        _slow_tick_us = 1000;
+    }
+
+    @PostConstruct
+    public void start() {
+        _wheels = new Wheel[_threads];
+        final DefaultThreadFactory threadFactory = new DefaultThreadFactory("playbackPacer", true, Thread.MAX_PRIORITY);
+        for (int idx = 0; idx < _threads; idx++) {
+            _wheels[idx] = new Wheel(idx);
+            threadFactory.newThread(_wheels[idx]).start();
+        }
+        log.info("PlaybackPacer: started with {} threads, tick: {} ms, wheel size: {}", _threads, _tick_ms, _wheel_size);
+    }
+
+    @PreDestroy
+    public void stop() {
+        _stopped = true;
+    }
+
+    /**
+     * start pacing stream, first onTick() called on next tick
+     * @param owner for watchdog report only
+     */
+    public void schedule(final Object owner, final Paced paced, final long intervalInMs) {
+        final Wheel wheel = _wheels[Math.floorMod(_nextWheel.getAndIncrement(), _wheels.length)];
+        wheel._pending.offer(new Entry(owner, paced, (int) Math.max(1, Math.round((double) intervalInMs / _tick_ms))));
+        _activeCount.incrementAndGet();
+    }
+
+    public int activeCount() {
+        return _activeCount.get();
+    }
+
+    /**
+     * @return count of onTick() calls cost more than slow_tick_us since start
+     */
+    public long slowTickCount() {
+        return _slowTickCount.get();
+    }
+
+    /**
+     * @return tick lateness histogram, eg: "<100us:xx,<500us:xx,...,>=20ms:xx"
+     */
+    public String jitterHistogram() {
+        final StringBuilder sb = new StringBuilder();
+        for (int idx = 0; idx < _jitter.length(); idx++) {
+            if (idx > 0) {
+                sb.append(',');
+            }
+            sb.append(idx < JITTER_BOUNDS_US.length ? "<" + JITTER_LABELS[idx] : ">=" + JITTER_LABELS[idx - 1])
+                    .append(':').append(_jitter.get(idx));
+        }
+        return sb.toString();
+    }
+
+    private void recordLateness(final long latenessInNanos) {
+        final long us = latenessInNanos / 1000;
+        int idx = 0;
+        while (idx < JITTER_BOUNDS_US.length && us >= JITTER_BOUNDS_US[idx]) {
+            idx++;
+        }
+        _jitter.incrementAndGet(idx);
+    }
+
+    private static final class Entry {
+        Entry(final Object owner, final Paced paced, final int ticks) {
+            this.owner = owner;
+            this.paced = paced;
+            this.ticks = ticks;
+        }
+
+        final Object owner;
+        final Paced paced;
+        final int ticks;
+        int rounds = 0;
+    }
+
+    private final class Wheel implements Runnable {
+        Wheel(final int idx) {
+            _idx = idx;
+            // generic array creation not allowed, suppress on this local only
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            final List<Entry>[] slots = new List[_wheel_size];
+            _slots = slots;
+            for (int i = 0; i < _wheel_size; i++) {
+                _slots[i] = new ArrayList<>();
+            }
+        }
+
+        @Override
+        public void run() {
+            final long tickInNanos = TimeUnit.MILLISECONDS.toNanos(_tick_ms);
+            final long reportEveryTicks = Math.max(1, TimeUnit.SECONDS.toMillis(_report_interval_s) / _tick_ms);
+            final long slowTickInNanos = TimeUnit.MICROSECONDS.toNanos(_slow_tick_us);
+            final long startInNanos = System.nanoTime();
+            while (!_stopped) {
+                final long deadline = startInNanos + (_tick + 1) * tickInNanos;
+                long wait;
+                while ((wait = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                _tick++;
+                recordLateness(System.nanoTime() - deadline);
+
+                Entry entry;
+                while ((entry = _pending.poll()) != null) {
+                    // new stream emit on this tick
+                    _slots[slotOf(_tick)].add(entry);
+                }
+                fire(slowTickInNanos);
+
+                if (_tick % reportEveryTicks == 0) {
+                    reportSlowTicks();
+                    if (_idx == 0) {
+                        log.info("PlaybackPacer: active streams: {}, slow ticks: {}, jitter: {}",
+                                _activeCount.get(), _slowTickCount.get(), jitterHistogram());
+                    }
+                }
+            }
+        }
+
+        private void fire(final long slowTickInNanos) {
+            final int slot = slotOf(_tick);
+            // swap out current slot, so entries re-inserted into same slot (interval == wheel size) wait for next round
+            final List<Entry> due = _slots[slot];
+            _slots[slot] = _spare;
+            for (final Entry entry : due) {
+                if (entry.rounds > 0) {
+                    entry.rounds--;
+                    _slots[slot].add(entry);
+                    continue;
+                }
+                boolean again;
+                final long beginInNanos = System.nanoTime();
+                try {
+                    again = entry.paced.onTick();
+                } catch (Exception ex) {
+                    log.warn("PlaybackPacer: {} onTick failed: {}, remove stream", entry.owner, ex.toString());
+                    again = false;
+                }
+                // watchdog: blocking work in onTick delay all streams behind it on this wheel
+                final long costInNanos = System.nanoTime() - beginInNanos;
+                if (costInNanos > slowTickInNanos) {
+                    _slowTickCount.incrementAndGet();
+                    // aggregated per owner, logged once every report interval (avoid log on hot path)
+                    final long[] slow = _slowOwners.computeIfAbsent(entry.owner, ignore -> new long[2]);
+                    slow[0]++;
+                    slow[1] = Math.max(slow[1], costInNanos);
+                }
+                if (again) {
+                    entry.rounds = (entry.ticks - 1) / _wheel_size;
+                    _slots[slotOf(_tick + entry.ticks)].add(entry);
+                } else {
+                    _activeCount.decrementAndGet();
+                }
+            }
+            due.clear();
+            _spare = due;
+        }
+
+        private void reportSlowTicks() {
+            for (final Map.Entry<Object, long[]> slow : _slowOwners.entrySet()) {
+                log.warn("PlaybackPacer: {} onTick exceed {} us {} times in last {} s, max cost {} us",
+                        slow.getKey(), _slow_tick_us, slow.getValue()[0], _report_interval_s, slow.getValue()[1] / 1000);
+            }
+            _slowOwners.clear();
+        }
+
+        private int slotOf(final long tick) {
+            return (int) (tick % _wheel_size);
+        }
+
+        private final int _idx;
+        private final List<Entry>[] _slots;
+        private List<Entry> _spare = new ArrayList<>();
+        private long _tick = 0;
+        private final Queue<Entry> _pending = new ConcurrentLinkedQueue<>();
+        // owner -> {slow count, max cost in nanos} of current report interval, wheel thread only
+        private final Map<Object, long[]> _slowOwners = new HashMap<>();
+    }
+
+    private static final long[] JITTER_BOUNDS_US = {100, 500, 1000, 2000, 5000, 10000, 20000};
+    private static final String[] JITTER_LABELS = {"100us", "500us", "1ms", "2ms", "5ms", "10ms", "20ms"};
+
+    private Wheel[] _wheels;
+    private volatile boolean _stopped = false;
+    private final AtomicInteger _nextWheel = new AtomicInteger(0);
+    private final AtomicInteger _activeCount = new AtomicInteger(0);
+    private final AtomicLong _slowTickCount = new AtomicLong(0);
+    private final AtomicLongArray _jitter = new AtomicLongArray(JITTER_BOUNDS_US.length + 1);
+}
@@ -0,0 +1,19 @@
+package com.yulore.medhub.task;
+
+/**
+ * playout policy of streamed playback (eg: tts), absorb jitter of slower than real-time source
+ */
+public record PlayoutPolicy(int burstMs,        // send at most burstMs audio at once on start (and after underrun), fill client's jitter buffer
+                            int minBufferMs,    // start playback only when minBufferMs audio buffered (or source completed)
+                            int maxBufferMs) {  // each underrun double the rebuffer duration, up to maxBufferMs
+    // real-time pace from first chunk, no burst & no rebuffer
+    public static final PlayoutPolicy DEFAULT = new PlayoutPolicy(0, 0, 0);
+
+    public int burstFrames(final SampleInfo sampleInfo) {
+        return Math.max(1, burstMs / sampleInfo.interval());
+    }
+
+    public int bytesOf(final int durationInMs, final SampleInfo sampleInfo) {
+        return durationInMs / sampleInfo.interval() * sampleInfo.bytesPerInterval();
+    }
+}
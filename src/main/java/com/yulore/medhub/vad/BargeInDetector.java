@@ -0,0 +1,79 @@
+package com.yulore.medhub.vad;
+
+/**
+ * caller speech onset detector on ingress audio during AI playback (barge-in), for 16bit LE mono PCM frames:
+ *  same energy/zero-crossing test as VADGate, fire once when speech lasts minSpeechMs, without waiting for
+ *  vendor's SentenceBegin. not thread-safe, should be called by session's ingress thread only.
+ */
+public class BargeInDetector {
+    public record Config(int energyThreshold,   // mean abs amplitude of speech frame, higher than vad's to ignore echo
+                         int zcrThreshold,
+                         int minSpeechMs,       // continuous speech before fire, 0 means fire on first speech frame
+                         int sampleRate) {
+        public static final Config DEFAULT = new Config(500, 250, 20, 16000);
+
+        /**
+         * @param values eg: "energy=500 zcr=250 min_speech_ms=20"
+         * @return null if values is empty, means local barge-in disabled
+         */
+        public static Config parse(final String values, final int sampleRate) {
+            if (null == values || values.isBlank()) {
+                return null;
+            }
+            int energy = DEFAULT.energyThreshold, zcr = DEFAULT.zcrThreshold, minSpeech = DEFAULT.minSpeechMs;
+            for (String kv : values.split(" ")) {
+                final String[] ss = kv.split("=");
+                if (ss.length == 2) {
+                    switch (ss[0]) {
+                        case "energy" -> energy = Integer.parseInt(ss[1]);
+                        case "zcr" -> zcr = Integer.parseInt(ss[1]);
+                        case "min_speech_ms" -> minSpeech = Integer.parseInt(ss[1]);
+                    }
+                }
+            }
+            return new Config(energy, zcr, minSpeech, sampleRate);
+        }
+    }
+
+    public BargeInDetector(final Config config) {
+        _config = config;
+        _bytesPerMs = config.sampleRate() / 1000 * 2;
+    }
+
+    /**
+     * @return true only on the frame which speech reach minSpeechMs, false for the rest of the same speech
+     */
+    public boolean offer(final byte[] frame) {
+        if (!VADGate.isSpeech(frame, _config.energyThreshold(), _config.zcrThreshold())) {
+            reset();
+            return false;
+        }
+        if (_speechMs == 0) {
+            _onsetInNanos = System.nanoTime();
+        }
+        _speechMs += Math.max(1, frame.length / _bytesPerMs);
+        if (!_fired && _speechMs >= _config.minSpeechMs()) {
+            _fired = true;
+            return true;
+        }
+        return false;
+    }
+
+    public void reset() {
+        _speechMs = 0;
+        _fired = false;
+    }
+
+    /**
+     * @return nanoTime of first speech frame of current speech
+     */
+    public long onsetInNanos() {
+        return _onsetInNanos;
+    }
+
+    private final Config _config;
+    private final int _bytesPerMs;
+    private int _speechMs = 0;
+    private boolean _fired = false;
+    private long _onsetInNanos = 0;
+}
@@ -0,0 +1,186 @@
+package com.yulore.medhub.vad;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * lightweight voice-activity gate in front of ASR vendors, for 16bit LE mono PCM frames:
+ *  speech detected by short-term energy (mean abs amplitude) plus zero-crossing rate,
+ *  after speech keep forwarding for hangover duration (vendor need trailing silence to end sentence),
+ *  then during silence only send comfort silence frame every comfort interval (or pause if interval is 0).
+ *  recent silence frames kept as pre-roll and sent before speech onset, avoid clipping first syllable.
+ *  not thread-safe, should be called by session's ingress thread only, no allocation per frame.
+ */
+public class VADGate {
+    public enum Action {
+        SPEECH,     // forward pre-roll frames (pollPreRoll) then this frame
+        HANGOVER,   // forward this frame
+        COMFORT,    // forward comfortFrame instead of this frame
+        SUPPRESS    // drop this frame
+    }
+
+    public record Config(int energyThreshold,   // mean abs amplitude of speech frame
+                         int zcrThreshold,      // zero-crossing per 1000 samples, for low energy unvoiced speech
+                         int hangoverMs,
+                         int comfortIntervalMs, // 0 means pause during silence
+                         int preRollMs,
+                         int sampleRate) {
+        public static final Config DEFAULT = new Config(300, 250, 1200, 200, 60, 8000);
+
+        /**
+         * @param values eg: "energy=300 zcr=250 hangover_ms=1200 comfort_interval_ms=200 preroll_ms=60"
+         * @return null if values is empty, means vad disabled
+         */
+        public static Config parse(final String values, final int sampleRate) {
+            if (null == values || values.isBlank()) {
+                return null;
+            }
+            int energy = DEFAULT.energyThreshold, zcr = DEFAULT.zcrThreshold, hangover = DEFAULT.hangoverMs,
+                    comfort = DEFAULT.comfortIntervalMs, preRoll = DEFAULT.preRollMs;
+            for (String kv : values.split(" ")) {
+                final String[] ss = kv.split("=");
+                if (ss.length == 2) {
+                    switch (ss[0]) {
+                        case "energy" -> energy = Integer.parseInt(ss[1]);
+                        case "zcr" -> zcr = Integer.parseInt(ss[1]);
+                        case "hangover_ms" -> hangover = Integer.parseInt(ss[1]);
+                        case "comfort_interval_ms" -> comfort = Integer.parseInt(ss[1]);
+                        case "preroll_ms" -> preRoll = Integer.parseInt(ss[1]);
+                    }
+                }
+            }
+            return new Config(energy, zcr, hangover, comfort, preRoll, sampleRate);
+        }
+    }
+
+    public VADGate(final Config config) {
+        _config = config;
+        _bytesPerMs = config.sampleRate() / 1000 * 2;
+    }
+
+    public Action offer(final byte[] frame) {
+        final int frameMs = Math.max(1, frame.length / _bytesPerMs);
+        _totalFrames++;
+        _speech = isSpeech(frame);
+        if (_speech) {
+            _silenceMs = 0;
+            _sinceComfortMs = 0;
+            _speechFrames++;
+            // pre-roll frames suppressed before, forwarded now
+            _suppressedFrames -= _preRoll.size();
+            _forwardedFrames += _preRoll.size() + 1;
+            return Action.SPEECH;
+        }
+        _silenceMs += frameMs;
+        if (_silenceMs <= _config.hangoverMs()) {
+            _forwardedFrames++;
+            return Action.HANGOVER;
+        }
+
+        _sinceComfortMs += frameMs;
+        if (_config.comfortIntervalMs() > 0 && _sinceComfortMs >= _config.comfortIntervalMs()) {
+            _sinceComfortMs = 0;
+            _comfortFrames++;
+            // frames before comfort frame must not be sent after it at speech onset
+            _preRoll.clear();
+            _preRollMs = 0;
+            return Action.COMFORT;
+        }
+
+        // extended silence: keep recent suppressed frames as pre-roll
+        _preRoll.addLast(frame);
+        _preRollMs += frameMs;
+        while (_preRollMs > _config.preRollMs() && !_preRoll.isEmpty()) {
+            _preRollMs -= Math.max(1, _preRoll.pollFirst().length / _bytesPerMs);
+        }
+        _suppressedFrames++;
+        return Action.SUPPRESS;
+    }
+
+    /**
+     * @return next pre-roll frame to forward before speech onset frame, null if none left
+     */
+    public byte[] pollPreRoll() {
+        final byte[] frame = _preRoll.pollFirst();
+        if (null == frame) {
+            _preRollMs = 0;
+        }
+        return frame;
+    }
+
+    /**
+     * @return zero-filled frame with the same length, shared & read-only
+     */
+    public byte[] comfortFrame(final int length) {
+        if (_comfort.length != length) {
+            _comfort = new byte[length];
+        }
+        return _comfort;
+    }
+
+    /**
+     * @return true if last offered frame is speech
+     */
+    public boolean isSpeech() {
+        return _speech;
+    }
+
+    boolean isSpeech(final byte[] frame) {
+        return isSpeech(frame, _config.energyThreshold(), _config.zcrThreshold());
+    }
+
+    /**
+     * speech if mean abs amplitude reach energyThreshold, or half of it with zero-crossing rate reach zcrThreshold
+     */
+    static boolean isSpeech(final byte[] frame, final int energyThreshold, final int zcrThreshold) {
+        final int samples = frame.length / 2;
+        if (samples == 0) {
+            return false;
+        }
+        long sumAbs = 0;
+        int crossings = 0;
+        int prev = 0;
+        for (int i = 0; i + 1 < frame.length; i += 2) {
+            final int sample = (short) ((frame[i] & 0xff) | (frame[i + 1] << 8));
+            sumAbs += Math.abs(sample);
+            if ((sample >= 0) != (prev >= 0)) {
+                crossings++;
+            }
+            prev = sample;
+        }
+        final long energy = sumAbs / samples;
+        final long zcr = crossings * 1000L / samples;
+        return energy >= energyThreshold
+                || (energy >= energyThreshold / 2 && zcr >= zcrThreshold);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("vad(total:%d/speech:%d/forwarded:%d/comfort:%d/suppressed:%d, saved: %.1f%%)",
+                _totalFrames, _speechFrames, _forwardedFrames, _comfortFrames, _suppressedFrames,
+                _totalFrames > 0 ? _suppressedFrames * 100.0f / _totalFrames : 0.0f);
+    }
+
+    public long totalFrames() {
+        return _totalFrames;
+    }
+
+    public long suppressedFrames() {
+        return _suppressedFrames;
+    }
+
+    private final Config _config;
+    private final int _bytesPerMs;
+    private final Deque<byte[]> _preRoll = new ArrayDeque<>();
+    private byte[] _comfort = new byte[0];
+    private int _preRollMs = 0;
+    private int _silenceMs = 0;
+    private int _sinceComfortMs = 0;
+    private boolean _speech = false;
+
+    private long _totalFrames = 0;
+    private long _speechFrames = 0;
+    private long _forwardedFrames = 0;
+    private long _comfortFrames = 0;
+    private long _suppressedFrames = 0;
+}
@@ -0,0 +1,14 @@
+package com.yulore.medhub.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.ToString;
+
+@AllArgsConstructor
+@Data
+@ToString
+public class PayloadStreamOpened {
+    // granted push window in bytes, 0 means push mode not enabled (use FileRead)
+    int push_window;
+    int push_chunk;
+}
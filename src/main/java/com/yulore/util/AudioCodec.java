@@ -0,0 +1,206 @@
+package com.yulore.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * wire codec of ws audio stream, hub internal always use 16bit little-endian linear pcm (L16).
+ *  G.711 µ-law/A-law converted by lookup tables (built once at class init),
+ *  the offset based decode/encode write into caller's buffer without any allocation.
+ *  G.711 is narrowband (8 kHz) only, see {@link #supports(int)}.
+ */
+public enum AudioCodec {
+    L16,
+    PCMU,
+    PCMA;
+
+    public static final int G711_SAMPLE_RATE = 8000;
+
+    /**
+     * @return true if audio of sampleRate can be carried by this codec, L16 any rate, G.711 8 kHz only
+     */
+    public boolean supports(final int sampleRate) {
+        return this == L16 || sampleRate == G711_SAMPLE_RATE;
+    }
+
+    /**
+     * parse handshake codec value, eg: pcmu / ulaw / mulaw / pcma / alaw / l16 / pcm,
+     *  null or empty means L16, unknown value return null
+     */
+    public static AudioCodec of(final String name) {
+        if (null == name || name.isEmpty()) {
+            return L16;
+        }
+        return switch (name.trim().toLowerCase()) {
+            case "l16", "pcm", "linear" -> L16;
+            case "pcmu", "ulaw", "mulaw", "g711u" -> PCMU;
+            case "pcma", "alaw", "g711a" -> PCMA;
+            default -> null;
+        };
+    }
+
+    /**
+     * decode wire frame into new L16 array (for frame retained by caller, eg: pre-start buffer / vendor SDK),
+     *  L16 frame returned as is (without copy)
+     */
+    public byte[] decode(final byte[] frame) {
+        if (this == L16) {
+            return frame;
+        }
+        final byte[] pcm = new byte[frame.length * 2];
+        decode(frame, 0, frame.length, pcm, 0);
+        return pcm;
+    }
+
+    /**
+     * encode L16 frame into wire format, L16 frame returned as is (without copy)
+     */
+    public byte[] encode(final byte[] pcm) {
+        if (this == L16) {
+            return pcm;
+        }
+        final byte[] frame = new byte[pcm.length / 2];
+        encode(pcm, 0, pcm.length, frame, 0);
+        return frame;
+    }
+
+    /**
+     * encode L16 heap buffer (position/remaining unchanged) into caller's reusable wire buffer (heap,
+     *  capacity >= remaining / 2) without allocation, returned wire buffer valid until next call;
+     *  L16 buffer returned as is, wire may be null
+     */
+    public ByteBuffer encode(final ByteBuffer pcm, final ByteBuffer wire) {
+        if (this == L16) {
+            return pcm;
+        }
+        final int len = encode(pcm.array(), pcm.arrayOffset() + pcm.position(), pcm.remaining(), wire.array(), wire.arrayOffset());
+        wire.clear().limit(len);
+        return wire;
+    }
+
+    /**
+     * decode len bytes of src (wire format) into dst as L16, return bytes written into dst
+     */
+    public int decode(final byte[] src, final int srcOff, final int len, final byte[] dst, final int dstOff) {
+        if (this == L16) {
+            System.arraycopy(src, srcOff, dst, dstOff, len);
+            return len;
+        }
+        final short[] table = this == PCMU ? Tables.ULAW_TO_LINEAR : Tables.ALAW_TO_LINEAR;
+        for (int i = 0, j = dstOff; i < len; i++, j += 2) {
+            final short sample = table[src[srcOff + i] & 0xFF];
+            dst[j] = (byte) sample;
+            dst[j + 1] = (byte) (sample >> 8);
+        }
+        return len * 2;
+    }
+
+    /**
+     * encode len bytes of L16 src into dst as wire format, return bytes written into dst
+     */
+    public int encode(final byte[] src, final int srcOff, final int len, final byte[] dst, final int dstOff) {
+        if (this == L16) {
+            System.arraycopy(src, srcOff, dst, dstOff, len);
+            return len;
+        }
+        final int samples = len / 2;
+        if (this == PCMU) {
+            for (int i = 0, j = srcOff; i < samples; i++, j += 2) {
+                final int sample = (src[j] & 0xFF) | (src[j + 1] << 8);
+                dst[dstOff + i] = Tables.LINEAR_TO_ULAW[(sample >> 2) & 0x3FFF];
+            }
+        } else {
+            for (int i = 0, j = srcOff; i < samples; i++, j += 2) {
+                final int sample = (src[j] & 0xFF) | (src[j + 1] << 8);
+                dst[dstOff + i] = Tables.LINEAR_TO_ALAW[(sample >> 3) & 0x1FFF];
+            }
+        }
+        return samples;
+    }
+
+    // lazy holder: L16 only session never build the tables
+    private static final class Tables {
+        // ref: ITU-T G.711 / CCITT reference implementation (g711.c)
+        private static final int[] SEG_UEND = {0x3F, 0x7F, 0xFF, 0x1FF, 0x3FF, 0x7FF, 0xFFF, 0x1FFF};
+        private static final int[] SEG_AEND = {0x1F, 0x3F, 0x7F, 0xFF, 0x1FF, 0x3FF, 0x7FF, 0xFFF};
+
+        static final short[] ULAW_TO_LINEAR = new short[256];
+        static final short[] ALAW_TO_LINEAR = new short[256];
+        // µ-law quantize 14bit, A-law quantize 13bit, so index by (sample >> 2) / (sample >> 3)
+        static final byte[] LINEAR_TO_ULAW = new byte[1 << 14];
+        static final byte[] LINEAR_TO_ALAW = new byte[1 << 13];
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                ULAW_TO_LINEAR[i] = (short) ulaw2linear(i);
+                ALAW_TO_LINEAR[i] = (short) alaw2linear(i);
+            }
+            for (int sample = Short.MIN_VALUE; sample <= Short.MAX_VALUE; sample += 4) {
+                LINEAR_TO_ULAW[(sample >> 2) & 0x3FFF] = (byte) linear2ulaw(sample);
+            }
+            for (int sample = Short.MIN_VALUE; sample <= Short.MAX_VALUE; sample += 8) {
+                LINEAR_TO_ALAW[(sample >> 3) & 0x1FFF] = (byte) linear2alaw(sample);
+            }
+        }
+
+        private static int segmentOf(final int value, final int[] segEnds) {
+            for (int seg = 0; seg < segEnds.length; seg++) {
+                if (value <= segEnds[seg]) {
+                    return seg;
+                }
+            }
+            return segEnds.length;
+        }
+
+        private static int linear2ulaw(final int sample) {
+            int value = sample >> 2;
+            final int mask;
+            if (value < 0) {
+                value = -value;
+                mask = 0x7F;
+            } else {
+                mask = 0xFF;
+            }
+            value = Math.min(value, 8159) + 0x21;
+            final int seg = segmentOf(value, SEG_UEND);
+            if (seg >= 8) {
+                return 0x7F ^ mask;
+            }
+            return ((seg << 4) | ((value >> (seg + 1)) & 0x0F)) ^ mask;
+        }
+
+        private static int ulaw2linear(final int code) {
+            final int u = ~code;
+            final int t = (((u & 0x0F) << 3) + 0x84) << ((u & 0x70) >> 4);
+            return (u & 0x80) != 0 ? (0x84 - t) : (t - 0x84);
+        }
+
+        private static int linear2alaw(final int sample) {
+            int value = sample >> 3;
+            final int mask;
+            if (value >= 0) {
+                mask = 0xD5;
+            } else {
+                mask = 0x55;
+                value = -value - 1;
+            }
+            final int seg = segmentOf(value, SEG_AEND);
+            if (seg >= 8) {
+                return 0x7F ^ mask;
+            }
+            final int quant = seg < 2 ? (value >> 1) & 0x0F : (value >> seg) & 0x0F;
+            return ((seg << 4) | quant) ^ mask;
+        }
+
+        private static int alaw2linear(final int code) {
+            final int a = code ^ 0x55;
+            int t = (a & 0x0F) << 4;
+            final int seg = (a & 0x70) >> 4;
+            switch (seg) {
+                case 0 -> t += 8;
+                case 1 -> t += 0x108;
+                default -> t = (t + 0x108) << (seg - 1);
+            }
+            return (a & 0x80) != 0 ? t : -t;
+        }
+    }
+}
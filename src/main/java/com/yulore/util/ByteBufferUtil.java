@@ -0,0 +1,22 @@
+package com.yulore.util;
+
+import java.nio.ByteBuffer;
+
+public class ByteBufferUtil {
+    /**
+     * get remaining bytes of buffer as byte[], buffer's position not changed.
+     *  heap buffer exactly covering its backing array (eg: ws frame payload) returned without copy,
+     *  sliced / offset / read-only / direct buffer copied once.
+     */
+    public static byte[] arrayOf(final ByteBuffer buffer) {
+        if (buffer.hasArray()
+                && buffer.arrayOffset() == 0
+                && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
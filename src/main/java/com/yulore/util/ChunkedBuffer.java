@@ -0,0 +1,102 @@
+package com.yulore.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * append-only list of byte chunks with prefix-sum offset index: chunk containing any position
+ *  found by binary search (O(log n)) instead of scanning/skipping from the first chunk,
+ *  read inside one chunk return zero-copy slice, only read across chunks copied.
+ *  not thread-safe, owner should confine it (eg: StreamSession's mailbox).
+ */
+public class ChunkedBuffer {
+    public void append(final byte[] chunk) {
+        if (chunk.length == 0) {
+            return;
+        }
+        if (_chunks.size() == _starts.length) {
+            _starts = Arrays.copyOf(_starts, _starts.length * 2);
+        }
+        _starts[_chunks.size()] = _length;
+        _chunks.add(chunk);
+        _length += chunk.length;
+    }
+
+    public int length() {
+        return _length;
+    }
+
+    /**
+     * @return read-only view of chunks, eg: for upload via ByteArrayListInputStream
+     */
+    public List<byte[]> chunks() {
+        return Collections.unmodifiableList(_chunks);
+    }
+
+    /**
+     * @return index of chunk containing pos, pos must be in [0, length)
+     */
+    int chunkIndexOf(final int pos) {
+        final int found = Arrays.binarySearch(_starts, 0, _chunks.size(), pos);
+        // not found: insertion point - 1 is the chunk start before pos
+        return found >= 0 ? found : -found - 2;
+    }
+
+    /**
+     * @return up to count bytes from pos: slice of chunk (shared, must not be modified) if inside one chunk,
+     *  otherwise copied; empty buffer if pos >= length
+     */
+    public ByteBuffer read(final int pos, final int count) {
+        final int size = Math.min(count, _length - pos);
+        if (size <= 0 || pos < 0) {
+            return ByteBuffer.allocate(0);
+        }
+        int idx = chunkIndexOf(pos);
+        int posInChunk = pos - _starts[idx];
+        if (posInChunk + size <= _chunks.get(idx).length) {
+            return ByteBuffer.wrap(_chunks.get(idx), posInChunk, size);
+        }
+        final byte[] bytes = new byte[size];
+        int filled = 0;
+        while (filled < size) {
+            final byte[] chunk = _chunks.get(idx);
+            final int len = Math.min(size - filled, chunk.length - posInChunk);
+            System.arraycopy(chunk, posInChunk, bytes, filled, len);
+            filled += len;
+            idx++;
+            posInChunk = 0;
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * overwrite existing bytes from pos in place, bytes beyond length not written
+     * @return bytes written
+     */
+    public int overwrite(final int pos, final byte[] src, final int off, final int len) {
+        final int size = Math.min(len, _length - pos);
+        if (size <= 0 || pos < 0) {
+            return 0;
+        }
+        int idx = chunkIndexOf(pos);
+        int posInChunk = pos - _starts[idx];
+        int written = 0;
+        while (written < size) {
+            final byte[] chunk = _chunks.get(idx);
+            final int n = Math.min(size - written, chunk.length - posInChunk);
+            System.arraycopy(src, off + written, chunk, posInChunk, n);
+            written += n;
+            idx++;
+            posInChunk = 0;
+        }
+        return written;
+    }
+
+    private final List<byte[]> _chunks = new ArrayList<>();
+    // _starts[i]: offset of _chunks[i]'s first byte, ascending
+    private int[] _starts = new int[16];
+    private int _length = 0;
+}
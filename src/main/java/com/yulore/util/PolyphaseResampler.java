@@ -0,0 +1,118 @@
+package com.yulore.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * streaming sample-rate converter for 16bit little-endian mono pcm, eg: 16000 <=> 8000, 44100 => 16000.
+ *  rate ratio reduced to up/down (L/M), conceptually upsample by L, low-pass, then downsample by M;
+ *  implemented as polyphase FIR: only the taps of phase used by each output sample are computed.
+ *  windowed-sinc filter table built once per rate pair and shared (read only), history kept across chunks (chunks may split at any
+ *  even byte), process() write into caller's buffer without any allocation. not thread-safe, one per stream.
+ */
+public class PolyphaseResampler {
+    // taps per phase when upsampling, scaled by down/up when downsampling (longer filter at input rate)
+    private static final int TAPS = 32;
+
+    public PolyphaseResampler(final int fromRate, final int toRate) {
+        final int gcd = gcd(fromRate, toRate);
+        _fromRate = fromRate;
+        _toRate = toRate;
+        _up = toRate / gcd;
+        _down = fromRate / gcd;
+        _taps = TAPS * ((_down + _up - 1) / _up);
+        _table = TABLES.computeIfAbsent(((long) _up << 32) | _down, ignore -> buildTable(_up, _down, _taps));
+        _hist = new float[_taps * 2];
+    }
+
+    public int fromRate() {
+        return _fromRate;
+    }
+
+    public int toRate() {
+        return _toRate;
+    }
+
+    /**
+     * @return exact output bytes of next process() call with inBytes of input
+     */
+    public int outputBytes(final int inBytes) {
+        final long endT = (_inCount + inBytes / 2) * _up;
+        return endT > _nextT ? (int) ((endT - _nextT + _down - 1) / _down) * 2 : 0;
+    }
+
+    /**
+     * convert len bytes (even) of src into dst, dst must have outputBytes(len) room, return bytes written
+     */
+    public int process(final byte[] src, final int srcOff, final int len, final byte[] dst, final int dstOff) {
+        int out = dstOff;
+        for (int i = srcOff, end = srcOff + (len & ~1); i < end; i += 2) {
+            // write twice, so last _taps samples (oldest => newest) always at _hist[_pos + 1 .. _pos + _taps]
+            _pos = _pos + 1 == _taps ? 0 : _pos + 1;
+            _hist[_pos] = _hist[_pos + _taps] = (short) ((src[i] & 0xFF) | (src[i + 1] << 8));
+            final long idx = _inCount++;
+            while (_nextT / _up == idx) {
+                final int phase = (int) (_nextT % _up) * _taps;
+                float acc = 0;
+                for (int k = 0, h = _pos + _taps; k < _taps; k++, h--) {
+                    acc += _table[phase + k] * _hist[h];
+                }
+                final int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(acc)));
+                dst[out++] = (byte) sample;
+                dst[out++] = (byte) (sample >> 8);
+                _nextT += _down;
+            }
+        }
+        return out - dstOff;
+    }
+
+    /**
+     * convert into new array of exact size, for chunks retained by consumer
+     */
+    public byte[] process(final byte[] src) {
+        final byte[] dst = new byte[outputBytes(src.length)];
+        process(src, 0, src.length, dst, 0);
+        return dst;
+    }
+
+    /**
+     * table[phase * taps + k] = h[phase + k * up], h: windowed-sinc low-pass at upsampled rate,
+     *  cutoff at the lower nyquist of from/to, gain up to keep amplitude after zero-stuffing
+     */
+    private static float[] buildTable(final int up, final int down, final int taps) {
+        final int length = up * taps;
+        // cutoff in cycles per upsampled sample, a little under nyquist for transition band
+        final double fc = 0.5 / Math.max(up, down) * 0.92;
+        final double center = (length - 1) / 2.0;
+        final float[] table = new float[length];
+        for (int i = 0; i < length; i++) {
+            final double x = i - center;
+            final double sinc = x == 0 ? 2 * fc : Math.sin(2 * Math.PI * fc * x) / (Math.PI * x);
+            // blackman window
+            final double w = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (length - 1))
+                    + 0.08 * Math.cos(4 * Math.PI * i / (length - 1));
+            table[(i % up) * taps + i / up] = (float) (sinc * w * up);
+        }
+        return table;
+    }
+
+    // (up << 32 | down) -> filter table, taps derived from up/down; few distinct rate pairs in practice
+    private static final Map<Long, float[]> TABLES = new ConcurrentHashMap<>();
+
+    private static int gcd(final int a, final int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private final int _fromRate;
+    private final int _toRate;
+    private final int _up;
+    private final int _down;
+    private final int _taps;
+    private final float[] _table;
+    private final float[] _hist;
+    private int _pos = 0;
+    // input samples consumed
+    private long _inCount = 0;
+    // position of next output sample, in upsampled samples
+    private long _nextT = 0;
+}
@@ -0,0 +1,53 @@
+package com.yulore.medhub.nls;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentHealthTest {
+
+    @Test
+    void openAfterConsecutiveFailuresThenProbe() throws InterruptedException {
+        final AgentHealth health = new AgentHealth(() -> "test");
+        health.configure(new AgentHealth.Config(3, 0.5f, 10, 30_000L, 3_000L, 50L, 1, 1));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(health.allowRequest());
+            health.onFailure("fail " + i);
+        }
+        assertEquals(AgentHealth.State.OPEN, health.state());
+        assertFalse(health.allowRequest());
+
+        Thread.sleep(60);
+        // only one probe allowed in HALF_OPEN
+        assertTrue(health.allowRequest());
+        assertEquals(AgentHealth.State.HALF_OPEN, health.state());
+        assertFalse(health.allowRequest());
+
+        health.onSuccess(100);
+        assertEquals(AgentHealth.State.CLOSED, health.state());
+        assertTrue(health.allowRequest());
+    }
+
+    @Test
+    void slowStartCountAsFailure() {
+        final AgentHealth health = new AgentHealth(() -> "test");
+        health.configure(new AgentHealth.Config(2, 0.5f, 10, 30_000L, 1_000L, 30_000L, 1, 1));
+
+        health.onSuccess(5_000);
+        health.onSuccess(5_000);
+        assertEquals(AgentHealth.State.OPEN, health.state());
+    }
+
+    @Test
+    void skipOpenAgentWhenSelect() {
+        final TTSAgent agent = new TTSAgent();
+        agent.setName("test");
+        agent.setLimit(10);
+        for (int i = 0; i < AgentHealth.Config.DEFAULT.consecutiveFailures(); i++) {
+            agent.recordFailure("fail");
+        }
+        assertNull(agent.checkAndSelectIfHasIdle());
+        assertEquals(0, agent.get_connectingOrConnectedCount().get());
+    }
+}
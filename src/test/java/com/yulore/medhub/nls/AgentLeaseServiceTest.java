@@ -0,0 +1,51 @@
+package com.yulore.medhub.nls;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentLeaseServiceTest {
+    private static TTSAgent agentOf(final int limit) {
+        final TTSAgent agent = new TTSAgent();
+        agent.setName("test");
+        agent.setLimit(limit);
+        return agent;
+    }
+
+    @Test
+    void closeIsIdempotent() {
+        final AgentLeaseService service = new AgentLeaseService();
+        final TTSAgent agent = agentOf(1);
+        assertNotNull(agent.checkAndSelectIfHasIdle());
+
+        final AgentLease<TTSAgent> lease = service.lease(agent, "s1", () -> true, 60_000);
+        lease.markConnected();
+        assertEquals(1, agent.get_connectedCount().get());
+        lease.close();
+        lease.close();
+        assertEquals(0, agent.get_connectingOrConnectedCount().get());
+        assertEquals(0, agent.get_connectedCount().get());
+        assertEquals(0, service.activeCount());
+    }
+
+    @Test
+    void reapLeaseOfGoneOwner() {
+        final AgentLeaseService service = new AgentLeaseService();
+        final TTSAgent agent = agentOf(1);
+        final AtomicBoolean alive = new AtomicBoolean(true);
+        assertNotNull(agent.checkAndSelectIfHasIdle());
+        service.lease(agent, "s1", alive::get, 60_000);
+
+        service.reapLeaked();
+        assertEquals(1, service.activeCount());
+        assertNull(agent.checkAndSelectIfHasIdle());
+
+        alive.set(false);
+        service.reapLeaked();
+        assertEquals(0, service.activeCount());
+        assertEquals(1, service.leakedCount());
+        assertNotNull(agent.checkAndSelectIfHasIdle());
+    }
+}
@@ -0,0 +1,53 @@
+package com.yulore.medhub.nls;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeastLoadedSelectorTest {
+
+    private static TTSAgent agentOf(final String name, final int limit) {
+        final TTSAgent agent = new TTSAgent();
+        agent.setName(name);
+        agent.setLimit(limit);
+        return agent;
+    }
+
+    @Test
+    void selectAgentWithMostHeadroom() {
+        final TTSAgent small = agentOf("small", 2);
+        final TTSAgent large = agentOf("large", 10);
+        final AgentSelector selector = new LeastLoadedSelector(200);
+
+        // large has more headroom, so selected first
+        assertSame(large, selector.select(List.of(small, large)));
+        assertEquals(1, large.get_connectingOrConnectedCount().get());
+        assertEquals(0, small.get_connectingOrConnectedCount().get());
+    }
+
+    @Test
+    void spreadLoadAndReturnNullWhenAllFull() {
+        final TTSAgent a = agentOf("a", 2);
+        final TTSAgent b = agentOf("b", 2);
+        final AgentSelector selector = new LeastLoadedSelector(200);
+
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(selector.select(List.of(a, b)));
+        }
+        assertEquals(2, a.get_connectingOrConnectedCount().get());
+        assertEquals(2, b.get_connectingOrConnectedCount().get());
+        assertNull(selector.select(List.of(a, b)));
+    }
+
+    @Test
+    void penalizeSlowAgent() {
+        final TTSAgent fast = agentOf("fast", 10);
+        final TTSAgent slow = agentOf("slow", 10);
+        slow.recordLatency(2000);
+        fast.recordLatency(50);
+
+        assertSame(fast, new LeastLoadedSelector(200).select(List.of(slow, fast)));
+    }
+}
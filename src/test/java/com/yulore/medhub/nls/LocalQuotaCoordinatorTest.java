@@ -0,0 +1,33 @@
+package com.yulore.medhub.nls;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LocalQuotaCoordinatorTest {
+    @Test
+    void testBorrowNotExceedAccountLimit() {
+        final LocalQuotaCoordinator coordinator = new LocalQuotaCoordinator();
+        assertEquals(4, coordinator.borrow("node1", "asr:a", 6, 4, 30_000));
+        assertEquals(2, coordinator.borrow("node2", "asr:a", 6, 4, 30_000));
+        assertEquals(0, coordinator.borrow("node2", "asr:a", 6, 4, 30_000));
+
+        coordinator.giveBack("node1", "asr:a", 4);
+        assertEquals(2, coordinator.usedOf("asr:a"));
+        assertEquals(4, coordinator.borrow("node2", "asr:a", 6, 4, 30_000));
+    }
+
+    @Test
+    void testExpiredLeaseReclaimed() throws InterruptedException {
+        final LocalQuotaCoordinator coordinator = new LocalQuotaCoordinator();
+        assertEquals(4, coordinator.borrow("node1", "asr:a", 4, 4, 50));
+        Thread.sleep(100);
+        // node1's lease expired, slots can be borrowed by node2
+        assertEquals(3, coordinator.borrow("node2", "asr:a", 4, 3, 30_000));
+        // node1 renew after expired, only get back remain slots
+        assertEquals(Map.of("asr:a", 1), coordinator.renew("node1", Map.of("asr:a", 4), 30_000));
+        assertEquals(4, coordinator.usedOf("asr:a"));
+    }
+}
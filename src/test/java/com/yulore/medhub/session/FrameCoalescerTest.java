@@ -0,0 +1,48 @@
+package com.yulore.medhub.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameCoalescerTest {
+
+    @Test
+    void batchFramesIntoPacket() {
+        final List<byte[]> packets = new CopyOnWriteArrayList<>();
+        // 60 ms packet of 8k 16bit pcm
+        final FrameCoalescer coalescer = new FrameCoalescer(960, 100, null, packets::add);
+        for (int i = 0; i < 7; i++) {
+            coalescer.offer(new byte[]{(byte) i});
+            coalescer.offer(new byte[319]);
+        }
+        assertEquals(2, packets.size());
+        assertEquals(960, packets.get(0).length);
+        assertEquals(0, packets.get(0)[0]);
+        assertEquals(3, packets.get(1)[0]);
+
+        coalescer.flush();
+        assertEquals(3, packets.size());
+        assertEquals(320, packets.get(2).length);
+        assertEquals(6, packets.get(2)[0]);
+    }
+
+    @Test
+    void flushAfterMaxHold() throws InterruptedException {
+        final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final List<byte[]> packets = new CopyOnWriteArrayList<>();
+            final FrameCoalescer coalescer = new FrameCoalescer(960, 20, timer, packets::add);
+            coalescer.offer(new byte[320]);
+            assertTrue(packets.isEmpty());
+            Thread.sleep(100);
+            assertEquals(1, packets.size());
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+}
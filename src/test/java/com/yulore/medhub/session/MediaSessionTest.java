@@ -2,6 +2,11 @@ package com.yulore.medhub.session;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 class MediaSessionTest {
 
@@ -15,4 +20,60 @@ class MediaSessionTest {
         // return false for the second time
         assertFalse(session.startTranscription());
     }
-}
\ No newline at end of file
+
+    @Test
+    void flushPreStartFramesInOrder() {
+        final MediaSession session = new MediaSession("test", false, 0, false, 0.0f, ()->{});
+        session.setPreStartBufferMs(40);
+        final List<byte[]> sent = new ArrayList<>();
+        session.setASR(()->{}, sent::add);
+
+        final byte[] f1 = new byte[320], f2 = new byte[320], f3 = new byte[320], f4 = new byte[320];
+        // before StartTranscription: dropped
+        assertFalse(session.transmit(f1));
+        assertTrue(session.startTranscription());
+        // connecting: buffered with capacity 40 ms (2 frames of 20 ms)
+        assertFalse(session.transmit(f1));
+        assertFalse(session.transmit(f2));
+        assertFalse(session.transmit(f3));
+        assertTrue(sent.isEmpty());
+
+        session.transcriptionStarted();
+        assertTrue(session.transmit(f4));
+        assertEquals(List.of(f2, f3, f4), sent);
+        assertEquals(20, session.preStartDroppedMs());
+        assertEquals(40, session.preStartBufferedMs());
+    }
+
+    @Test
+    void startedCallbackBeforeStartReturned() {
+        final MediaSession session = new MediaSession("test", false, 0, false, 0.0f, ()->{});
+        assertTrue(session.startTranscription());
+        // vendor callback thread move CONNECTING -> STARTED while start() still running
+        session.transcriptionStarted();
+        assertTrue(session.connectCompleted(true));
+        assertEquals(ASRSession.TranscriberState.STARTED, session.transcriberState());
+    }
+
+    @Test
+    void stopDuringConnectingIsQueued() {
+        final MediaSession session = new MediaSession("test", false, 0, false, 0.0f, ()->{});
+        final AtomicInteger stopped = new AtomicInteger(0);
+        assertTrue(session.startTranscription());
+        session.setASR(stopped::incrementAndGet, (ignore)->{});
+
+        final CompletableFuture<Void> closed = session.stopAndCloseTranscriber(Runnable::run);
+        assertEquals(ASRSession.TranscriberState.STOPPING, session.transcriberState());
+        assertEquals(0, stopped.get());
+        assertFalse(closed.isDone());
+
+        // vendor start() returned: queued stop executed by connecting thread
+        assertFalse(session.connectCompleted(true));
+        assertEquals(1, stopped.get());
+        assertTrue(closed.isDone());
+        assertEquals(ASRSession.TranscriberState.CLOSED, session.transcriberState());
+
+        session.stopAndCloseTranscriber(Runnable::run);
+        assertEquals(1, stopped.get());
+    }
+}
@@ -0,0 +1,44 @@
+package com.yulore.medhub.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamSessionTest {
+
+    @Test
+    void pushWithinCreditAndRestartOnSeek() {
+        final List<Integer> pushed = new ArrayList<>();
+        final StreamSession ss = new StreamSession(false, (ctx) -> {}, (ctx) -> pushed.add(ctx.data.remaining()),
+                (ctx) -> {}, "{type=tts}tts.wav", "s1", "c1", "0");
+        ss.enablePush(10, 4);
+
+        ss.appendData(new byte[6]);
+        ss.appendData(new byte[6]);
+        // window 10 bytes: 4 + 2 (first chunk) + 4, wait for credit
+        assertEquals(List.of(4, 2, 4), pushed);
+        // pushed but not consumed (credited back) yet
+        assertEquals(0, ss.tell());
+
+        ss.addCredit(4);
+        assertEquals(List.of(4, 2, 4, 2), pushed);
+        assertEquals(4, ss.tell());
+
+        pushed.clear();
+        ss.seekFromStart(8);
+        ss.push(0);
+        assertEquals(List.of(4), pushed);
+
+        // no more data until completed, then empty frame as eof once
+        ss.appendCompleted();
+        ss.addCredit(10);
+        assertEquals(List.of(4, 0), pushed);
+
+        // credit capped at window, never overflow
+        ss.addCredit(Integer.MAX_VALUE);
+        assertEquals(12, ss.tell());
+    }
+}
@@ -0,0 +1,43 @@
+package com.yulore.medhub.task;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PCMViewTest {
+
+    @Test
+    void decodeOnceThenSeekBySamples() throws Exception {
+        // 1000 samples of 8k/16bit/mono, sample i = i
+        final byte[] pcm = new byte[2000];
+        for (int i = 0; i < 1000; i++) {
+            pcm[i * 2] = (byte) i;
+            pcm[i * 2 + 1] = (byte) (i >> 8);
+        }
+        final AudioFormat format = new AudioFormat(8000, 16, 1, true, false);
+        final ByteArrayOutputStream wav = new ByteArrayOutputStream();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), format, 1000), AudioFileFormat.Type.WAVE, wav);
+
+        final PCMView view = PCMView.ofWav(wav.toByteArray());
+        assertEquals(2000, view.length());
+        assertEquals(new SampleInfo(8000, 20, 16, 1), view.sampleInfo(20));
+
+        final int offset = view.offsetOf(480);
+        assertEquals(960, offset);
+        final ByteBuffer frame = view.slice(offset, 320);
+        assertEquals(320, frame.remaining());
+        assertEquals(480, frame.order(ByteOrder.LITTLE_ENDIAN).getShort(frame.position()));
+        // less than one frame left
+        assertNull(view.slice(view.offsetOf(900), 320));
+        assertEquals(2000, view.offsetOf(5000));
+    }
+}
@@ -0,0 +1,158 @@
+package com.yulore.medhub.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlayStreamPCMTaskTest {
+
+    @Test
+    void framesSpanChunksInOrder() throws Exception {
+        final PlaybackPacer pacer = new PlaybackPacer(1, 20, 64);
+        pacer.start();
+        // collected on pacer thread, asserted on test thread
+        final Queue<byte[]> frames = new ConcurrentLinkedQueue<>();
+        final CountDownLatch ended = new CountDownLatch(1);
+        try {
+            final PlayStreamPCMTask task = new PlayStreamPCMTask("test", pacer,
+                    new SampleInfo(8000, 20, 16, 1),
+                    PlayoutPolicy.DEFAULT,
+                    (ignore)->{}, (ignore)->{},
+                    (frame) -> {
+                        // frame may wrap task's reused buffer, copy it
+                        final byte[] bytes = new byte[frame.remaining()];
+                        frame.get(bytes);
+                        frames.add(bytes);
+                    },
+                    (ignore)-> ended.countDown());
+
+            // 4 frames of 320 bytes made of small odd-sized chunks
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            byte value = 0;
+            for (final int size : new int[]{100, 250, 7, 600, 323}) {
+                final byte[] chunk = new byte[size];
+                for (int i = 0; i < size; i++) {
+                    chunk[i] = value++;
+                }
+                expected.writeBytes(chunk);
+                task.appendData(chunk);
+            }
+            task.appendCompleted();
+
+            assertTrue(ended.await(2, TimeUnit.SECONDS));
+            assertTrue(task.isCompleted());
+            final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+            for (byte[] frame : frames) {
+                assertEquals(320, frame.length);
+                sent.writeBytes(frame);
+            }
+            assertArrayEquals(expected.toByteArray(), sent.toByteArray());
+        } finally {
+            pacer.stop();
+        }
+    }
+
+    @Test
+    void burstThenRebufferOnUnderrun() throws Exception {
+        // ticked by test thread, frame counts not depend on timing
+        final ManualPacer pacer = new ManualPacer();
+        final AtomicInteger sent = new AtomicInteger(0);
+        final AtomicInteger ended = new AtomicInteger(0);
+        // burst 60 ms (3 frames), start after 40 ms buffered, rebuffer up to 160 ms
+        final PlayStreamPCMTask task = new PlayStreamPCMTask("test", pacer,
+                new SampleInfo(8000, 20, 16, 1),
+                new PlayoutPolicy(60, 40, 160),
+                (ignore)->{}, (ignore)->{},
+                (frame) -> sent.incrementAndGet(),
+                (ignore)-> ended.incrementAndGet());
+
+        task.appendData(new byte[320]);
+        assertEquals(0, sent.get());
+        task.appendData(new byte[320 * 4]);
+        // 3 frames burst on start
+        assertEquals(3, sent.get());
+
+        // 2 buffered frames paced, then underrun: wait for 80 ms rebuffer
+        assertTrue(pacer.tick());
+        assertTrue(pacer.tick());
+        assertTrue(pacer.tick());
+        assertEquals(5, sent.get());
+        assertEquals(1, task.underrunCount());
+        task.appendData(new byte[320]);
+        assertTrue(pacer.tick());
+        assertEquals(5, sent.get());
+        Thread.sleep(20);
+        task.appendData(new byte[320]);
+        task.appendData(new byte[320]);
+        task.appendData(new byte[320]);
+        task.appendCompleted();
+
+        // rebuffered: burst 3 frames, then the last one paced
+        assertTrue(pacer.tick());
+        assertEquals(8, sent.get());
+        assertTrue(pacer.tick());
+        assertEquals(9, sent.get());
+        assertFalse(pacer.tick());
+        assertEquals(1, ended.get());
+        assertTrue(task.isCompleted());
+        assertEquals(1, task.underrunCount());
+        assertTrue(task.underrunMs() >= 20);
+    }
+
+    @Test
+    void wheelPacesByInterval() throws Exception {
+        final PlaybackPacer pacer = new PlaybackPacer(1, 10, 4);
+        pacer.start();
+        try {
+            final CountDownLatch every10 = new CountDownLatch(20), every60 = new CountDownLatch(4);
+            // interval longer than wheel (4 slots * 10 ms) need extra rounds
+            final long startInMs = System.currentTimeMillis();
+            pacer.schedule("test", () -> { every10.countDown(); return every10.getCount() > 0; }, 10);
+            pacer.schedule("test", () -> { every60.countDown(); return every60.getCount() > 0; }, 60);
+
+            assertTrue(every10.await(2, TimeUnit.SECONDS));
+            assertTrue(every60.await(2, TimeUnit.SECONDS));
+            // first tick within 10 ms, then 3 * 60 ms
+            assertTrue(System.currentTimeMillis() - startInMs >= 180);
+            Thread.sleep(50);
+            assertEquals(0, pacer.activeCount());
+
+            // watchdog: onTick() cost more than slow_tick_us (1 ms) counted
+            final CountDownLatch slow = new CountDownLatch(1);
+            pacer.schedule("slow", () -> {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+                slow.countDown();
+                return false;
+            }, 10);
+            assertTrue(slow.await(2, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            assertTrue(pacer.slowTickCount() >= 1);
+        } finally {
+            pacer.stop();
+        }
+    }
+
+    /**
+     * keep scheduled stream instead of pacing it on wheel threads, test thread call tick() as interval elapsed
+     */
+    private static class ManualPacer extends PlaybackPacer {
+        @Override
+        public void schedule(final Object owner, final Paced paced, final long intervalInMs) {
+            _paced = paced;
+        }
+
+        boolean tick() {
+            return _paced.onTick();
+        }
+
+        private Paced _paced;
+    }
+}
@@ -0,0 +1,48 @@
+package com.yulore.medhub.vad;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BargeInDetectorTest {
+    // 20 ms of 16k 16bit pcm
+    private static byte[] frameOf(final int amplitude) {
+        final byte[] frame = new byte[640];
+        for (int i = 0; i < 320; i++) {
+            final int sample = (i % 2 == 0) ? amplitude : -amplitude;
+            frame[i * 2] = (byte) (sample & 0xff);
+            frame[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        return frame;
+    }
+
+    @Test
+    void fireOnceWhenSpeechLastsMinSpeech() {
+        final BargeInDetector detector = new BargeInDetector(new BargeInDetector.Config(500, 250, 40, 16000));
+        final byte[] silence = frameOf(10);
+        final byte[] speech = frameOf(2000);
+
+        assertFalse(detector.offer(silence));
+        assertFalse(detector.offer(speech));
+        // interrupted by silence, count again
+        assertFalse(detector.offer(silence));
+        assertFalse(detector.offer(speech));
+        final long onset = detector.onsetInNanos();
+        assertTrue(detector.offer(speech));
+        assertEquals(onset, detector.onsetInNanos());
+        assertFalse(detector.offer(speech));
+
+        assertFalse(detector.offer(silence));
+        assertFalse(detector.offer(speech));
+        assertTrue(detector.offer(speech));
+    }
+
+    @Test
+    void fireOnFirstFrameByDefault() {
+        final BargeInDetector detector = new BargeInDetector(BargeInDetector.Config.parse("energy=800", 16000));
+        // below half of energy threshold
+        assertFalse(detector.offer(frameOf(300)));
+        assertTrue(detector.offer(frameOf(2000)));
+        assertNull(BargeInDetector.Config.parse(" ", 16000));
+    }
+}
@@ -0,0 +1,52 @@
+package com.yulore.medhub.vad;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VADGateTest {
+    // 20 ms of 8k 16bit pcm
+    private static byte[] frameOf(final int amplitude) {
+        final byte[] frame = new byte[320];
+        for (int i = 0; i < 160; i++) {
+            final int sample = (i % 2 == 0) ? amplitude : -amplitude;
+            frame[i * 2] = (byte) (sample & 0xff);
+            frame[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        return frame;
+    }
+
+    @Test
+    void hangoverThenComfortThenSpeechWithPreRoll() {
+        // hangover 40ms, comfort every 100ms, pre-roll 40ms
+        final VADGate vad = new VADGate(new VADGate.Config(300, 250, 40, 100, 40, 8000));
+        final byte[] silence = frameOf(10);
+        final byte[] speech = frameOf(2000);
+
+        assertEquals(VADGate.Action.SPEECH, vad.offer(speech));
+        assertEquals(VADGate.Action.HANGOVER, vad.offer(silence));
+        assertEquals(VADGate.Action.HANGOVER, vad.offer(silence));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(VADGate.Action.SUPPRESS, vad.offer(silence));
+        }
+        assertEquals(VADGate.Action.COMFORT, vad.offer(silence));
+        assertArrayEquals(new byte[320], vad.comfortFrame(320));
+
+        // pre-roll restart after comfort frame, keep audio order on asr timeline
+        assertEquals(VADGate.Action.SUPPRESS, vad.offer(silence));
+        assertEquals(VADGate.Action.SUPPRESS, vad.offer(silence));
+        assertEquals(VADGate.Action.SUPPRESS, vad.offer(silence));
+        assertEquals(VADGate.Action.SPEECH, vad.offer(speech));
+        // only last 40 ms of suppressed frames kept as pre-roll
+        assertNotNull(vad.pollPreRoll());
+        assertNotNull(vad.pollPreRoll());
+        assertNull(vad.pollPreRoll());
+        assertEquals(5, vad.suppressedFrames());
+    }
+
+    @Test
+    void disabledWhenConfigEmpty() {
+        assertNull(VADGate.Config.parse("", 8000));
+        assertEquals(500, VADGate.Config.parse("energy=500", 8000).energyThreshold());
+    }
+}
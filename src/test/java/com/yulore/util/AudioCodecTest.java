@@ -0,0 +1,71 @@
+package com.yulore.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AudioCodecTest {
+
+    @Test
+    void parseHandshakeValue() {
+        assertEquals(AudioCodec.L16, AudioCodec.of(null));
+        assertEquals(AudioCodec.L16, AudioCodec.of("pcm"));
+        assertEquals(AudioCodec.PCMU, AudioCodec.of("ULAW"));
+        assertEquals(AudioCodec.PCMA, AudioCodec.of(" pcma "));
+        assertNull(AudioCodec.of("opus"));
+    }
+
+    @Test
+    void l16PassedWithoutCopy() {
+        final byte[] frame = new byte[]{1, 2, 3, 4};
+        assertSame(frame, AudioCodec.L16.decode(frame));
+        assertSame(frame, AudioCodec.L16.encode(frame));
+    }
+
+    @Test
+    void encodeSliceIntoReusedWireBuffer() {
+        final byte[] pcm = AudioCodec.PCMU.decode(new byte[]{9, 1, 2, 3, 9});
+        final ByteBuffer wire = ByteBuffer.allocate(8);
+        final ByteBuffer encoded = AudioCodec.PCMU.encode(ByteBuffer.wrap(pcm, 2, 6), wire);
+        assertSame(wire, encoded);
+        assertArrayEquals(new byte[]{1, 2, 3}, ByteBufferUtil.arrayOf(encoded));
+        assertTrue(AudioCodec.L16.supports(16000));
+        assertFalse(AudioCodec.PCMA.supports(16000));
+    }
+
+    @Test
+    void everyCodeSurvivesDecodeEncode() {
+        final byte[] codes = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            codes[i] = (byte) i;
+        }
+        assertArrayEquals(codes, AudioCodec.PCMA.encode(AudioCodec.PCMA.decode(codes)));
+
+        final byte[] ulaw = AudioCodec.PCMU.encode(AudioCodec.PCMU.decode(codes));
+        for (int i = 0; i < 256; i++) {
+            // 0x7F (-0) decode to 0, re-encoded as 0xFF (+0)
+            assertEquals(i == 0x7F ? (byte) 0xFF : codes[i], ulaw[i], "ulaw code " + i);
+        }
+    }
+
+    @Test
+    void quantizationErrorBoundedBySegment() {
+        final byte[] pcm = new byte[2];
+        final byte[] code = new byte[1];
+        final byte[] decoded = new byte[2];
+        for (final AudioCodec codec : new AudioCodec[]{AudioCodec.PCMU, AudioCodec.PCMA}) {
+            for (int sample = -32000; sample <= 32000; sample += 7) {
+                pcm[0] = (byte) sample;
+                pcm[1] = (byte) (sample >> 8);
+                assertEquals(1, codec.encode(pcm, 0, 2, code, 0));
+                assertEquals(2, codec.decode(code, 0, 1, decoded, 0));
+                final int restored = (decoded[0] & 0xFF) | (decoded[1] << 8);
+                // G.711 step size is at most 1024 in the top segment, so error <= half step (+ bias)
+                assertTrue(Math.abs(restored - sample) <= Math.max(64, Math.abs(sample) / 16),
+                        codec + ": " + sample + " => " + restored);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.yulore.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteBufferUtilTest {
+
+    @Test
+    void wholeHeapBufferWithoutCopy() {
+        final byte[] payload = new byte[]{1, 2, 3, 4};
+        assertSame(payload, ByteBufferUtil.arrayOf(ByteBuffer.wrap(payload)));
+    }
+
+    @Test
+    void slicedAndDirectBufferRespectPosition() {
+        final ByteBuffer sliced = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}, 1, 3).slice();
+        assertArrayEquals(new byte[]{2, 3, 4}, ByteBufferUtil.arrayOf(sliced));
+        assertEquals(0, sliced.position());
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(4).put(new byte[]{1, 2, 3, 4});
+        direct.flip().position(2);
+        assertArrayEquals(new byte[]{3, 4}, ByteBufferUtil.arrayOf(direct));
+        assertEquals(2, direct.position());
+    }
+}
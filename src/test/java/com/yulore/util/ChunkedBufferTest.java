@@ -0,0 +1,53 @@
+package com.yulore.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedBufferTest {
+
+    private static ChunkedBuffer of(final byte[]... chunks) {
+        final ChunkedBuffer buffer = new ChunkedBuffer();
+        for (byte[] chunk : chunks) {
+            buffer.append(chunk);
+        }
+        return buffer;
+    }
+
+    @Test
+    void locateChunkByOffsetIndex() {
+        final ChunkedBuffer buffer = new ChunkedBuffer();
+        for (int i = 0; i < 100; i++) {
+            buffer.append(new byte[10]);
+        }
+        assertEquals(1000, buffer.length());
+        assertEquals(0, buffer.chunkIndexOf(0));
+        assertEquals(0, buffer.chunkIndexOf(9));
+        assertEquals(1, buffer.chunkIndexOf(10));
+        assertEquals(99, buffer.chunkIndexOf(999));
+    }
+
+    @Test
+    void readInsideChunkWithoutCopy() {
+        final byte[] first = new byte[]{1, 2, 3, 4};
+        final ChunkedBuffer buffer = of(first, new byte[]{5, 6}, new byte[]{7, 8, 9});
+
+        final ByteBuffer slice = buffer.read(1, 2);
+        assertSame(first, slice.array());
+        assertArrayEquals(new byte[]{2, 3}, ByteBufferUtil.arrayOf(slice));
+
+        assertArrayEquals(new byte[]{3, 4, 5, 6, 7}, ByteBufferUtil.arrayOf(buffer.read(2, 5)));
+        assertArrayEquals(new byte[]{8, 9}, ByteBufferUtil.arrayOf(buffer.read(7, 100)));
+        assertFalse(buffer.read(9, 10).hasRemaining());
+    }
+
+    @Test
+    void overwriteAcrossChunksUpToLength() {
+        final ChunkedBuffer buffer = of(new byte[]{1, 2, 3}, new byte[]{4, 5});
+        assertEquals(3, buffer.overwrite(2, new byte[]{-1, -2, -3, -4, -5}, 0, 5));
+        assertArrayEquals(new byte[]{1, 2, -1, -2, -3}, ByteBufferUtil.arrayOf(buffer.read(0, 5)));
+        assertEquals(0, buffer.overwrite(5, new byte[]{9}, 0, 1));
+    }
+}
@@ -0,0 +1,63 @@
+package com.yulore.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolyphaseResamplerTest {
+    private static byte[] sineOf(final int rate, final int freq, final int amplitude, final int samples) {
+        final byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            final int sample = (int) Math.round(amplitude * Math.sin(2 * Math.PI * freq * i / rate));
+            pcm[i * 2] = (byte) sample;
+            pcm[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    // rms of samples after skip (filter warm-up)
+    private static double rmsOf(final byte[] pcm, final int skip) {
+        double sum = 0;
+        int count = 0;
+        for (int i = skip * 2; i + 1 < pcm.length; i += 2) {
+            final int sample = (pcm[i] & 0xFF) | (pcm[i + 1] << 8);
+            sum += (double) sample * sample;
+            count++;
+        }
+        return Math.sqrt(sum / count);
+    }
+
+    @Test
+    void chunkedOutputMatchesLengthAndKeepsPassband() {
+        final byte[] tone = sineOf(16000, 1000, 10000, 16000);
+        final PolyphaseResampler down = new PolyphaseResampler(16000, 8000);
+        final byte[] out = new byte[down.outputBytes(tone.length)];
+        assertEquals(16000, out.length);
+        // odd sized chunks, history kept across chunks
+        int in = 0, written = 0;
+        for (final int size : new int[]{320, 1002, 6, 30672}) {
+            final int expected = down.outputBytes(size);
+            final int actual = down.process(tone, in, size, out, written);
+            assertEquals(expected, actual);
+            in += size;
+            written += actual;
+        }
+        assertEquals(out.length, written);
+        assertEquals(10000 / Math.sqrt(2), rmsOf(out, 100), 300);
+
+        final byte[] up = new PolyphaseResampler(8000, 16000).process(out);
+        assertEquals(tone.length, up.length);
+        assertEquals(10000 / Math.sqrt(2), rmsOf(up, 200), 300);
+    }
+
+    @Test
+    void rejectAboveTargetNyquist() {
+        // 6 kHz can't be represented at 8 kHz, must be filtered instead of aliased to 2 kHz
+        final byte[] out = new PolyphaseResampler(16000, 8000).process(sineOf(16000, 6000, 10000, 16000));
+        assertTrue(rmsOf(out, 100) < 100, "rms: " + rmsOf(out, 100));
+
+        final byte[] fromCd = new PolyphaseResampler(44100, 16000).process(sineOf(44100, 1000, 10000, 44100));
+        assertEquals(16000 * 2, fromCd.length);
+        assertEquals(10000 / Math.sqrt(2), rmsOf(fromCd, 100), 300);
+    }
+}